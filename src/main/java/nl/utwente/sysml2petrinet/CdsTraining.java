@@ -0,0 +1,82 @@
+package nl.utwente.sysml2petrinet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Training run for an AppCDS archive. The build starts this class with <code>-XX:ArchiveClassesAtExit</code>, so
+ * every class the pipeline loads while transforming the sample models (Xtext, EMF, Acceleo, OCL, ...) is dumped
+ * into the archive and does not have to be loaded and verified from the jars again.
+ * A CDS archive is only valid for the exact classpath it was created with, so the training run also writes a java
+ * argument file with that classpath for launchers to use (<code>java @sysml2petrinet.args ...</code>).
+ */
+public class CdsTraining {
+    private static final Logger logger = LogManager.getLogger(CdsTraining.class);
+
+    /**
+     * Transform every sample model in all output modes. Exits with 1 if there is nothing to train on or the argument
+     * file cannot be written, so the build does not succeed without a usable archive.
+     *
+     * @param args Model directory, output directory, CDS archive and argument file to write
+     */
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            System.out.println("Arguments not valid : {modelDir, outputDir, archive, argFile}.");
+            System.exit(2);
+        }
+        String outputDir = args[1] + File.separator;
+        new File(outputDir).mkdirs();
+
+        SysML2PetriNet sysML2PetriNet = new SysML2PetriNet();
+        logger.info("Pipeline ready {} ms after JVM start", ManagementFactory.getRuntimeMXBean().getUptime());
+        int failed = 0;
+        File[] models = new File(args[0]).listFiles((dir, name) -> name.endsWith(".sysml"));
+        if (models == null || models.length == 0) {
+            logger.error("No training models found in {}", args[0]);
+            System.exit(1);
+        }
+        for (File model : models) {
+            try {
+                sysML2PetriNet.transform(model.getAbsolutePath(), outputDir + model.getName() + ".xmi", outputDir, true, false);
+                sysML2PetriNet.transform(model.getAbsolutePath(), outputDir + model.getName() + ".xmi", outputDir, true, true);
+                sysML2PetriNet.transform(model.getAbsolutePath(), outputDir + model.getName() + ".xmi", outputDir, false, false);
+            } catch (Exception e) {
+                // Some samples are invalid on purpose, their error paths are worth archiving as well
+                logger.warn("Training model {} failed", model.getName(), e);
+                failed++;
+            }
+        }
+        logger.info("Trained on {} models, {} of which failed", models.length, failed);
+
+        try {
+            writeArgFile(new File(args[2]), new File(args[3]));
+        } catch (IOException e) {
+            logger.error("Could not write {}", args[3], e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Write the JVM options that use the archive together with the classpath of this run
+     *
+     * @param archive CDS archive created at exit
+     * @param argFile java argument file to write
+     * @throws IOException IO errors
+     */
+    private static void writeArgFile(File archive, File argFile) throws IOException {
+        String content = "-XX:SharedArchiveFile=" + quote(archive.getAbsolutePath()) + System.lineSeparator()
+                + "-cp " + quote(System.getProperty("java.class.path")) + System.lineSeparator();
+        Files.writeString(argFile.toPath(), content, StandardCharsets.UTF_8);
+        logger.info("Wrote launcher arguments to {}", argFile);
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\") + "\"";
+    }
+}
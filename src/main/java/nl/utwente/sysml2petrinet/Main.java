@@ -4,6 +4,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 
 public class Main {
     private static final Logger logger = LogManager.getLogger(Main.class);
@@ -22,6 +23,7 @@ public class Main {
             SysML2PetriNet sysML2PetriNet = new SysML2PetriNet();
             sysML2PetriNet.transform(filePath, outputXMI, outputDir, false, false);
             //sysML2PetriNet.transformMultiple("src/main/resources/model/", "src/main/resources/model/output/", false);
+            logger.info("Finished {} ms after JVM start", ManagementFactory.getRuntimeMXBean().getUptime());
         } catch (Exception e) {
             logger.error("Error in main", e);
         }
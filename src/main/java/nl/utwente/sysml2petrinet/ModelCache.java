@@ -0,0 +1,210 @@
+package nl.utwente.sysml2petrinet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.omg.sysml.lang.sysml.Namespace;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded cache of processed input models, least recently used models are evicted first.
+ * An entry is only returned while the file on disk still matches it: the modification time and size are checked on
+ * every lookup, and if they changed the content hash decides whether the model has to be processed again.
+ * Callers hold a reference to every model they got from the cache until they {@link #release(Namespace)} it, and a
+ * model is only unloaded once it is neither cached nor held by any caller.
+ */
+public class ModelCache {
+    private static final Logger logger = LogManager.getLogger(ModelCache.class);
+    private final Map<File, Entry> entries;
+    private final Map<Namespace, Entry> byRoot = new IdentityHashMap<>();
+
+    /**
+     * @param maxSize Maximum number of models kept loaded
+     */
+    public ModelCache(int maxSize) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<File, Entry> eldest) {
+                if (size() > maxSize) {
+                    evict(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Take the fingerprint of a file before processing it, so changes made while it is processed are detected by the
+     * next lookup
+     *
+     * @param file Input model
+     * @return Modification time, size and content hash of the file
+     * @throws IOException File could not be read
+     */
+    public static Fingerprint fingerprint(File file) throws IOException {
+        // Time and size first, a write after them changes them again
+        long lastModified = file.lastModified();
+        long length = file.length();
+        return new Fingerprint(lastModified, length, hash(file));
+    }
+
+    /**
+     * @param file Input model
+     * @return The cached root element, held by the caller until released, or null if the model is not cached or the
+     * file changed since it was cached
+     * @throws IOException File could not be read
+     */
+    public synchronized Namespace get(File file) throws IOException {
+        Entry entry = entries.get(file);
+        if (entry == null) {
+            return null;
+        }
+        long lastModified = file.lastModified();
+        long length = file.length();
+        if (entry.fingerprint.lastModified != lastModified || entry.fingerprint.length != length) {
+            // Touched files often have the same content, only parse again if it actually changed
+            if (!Arrays.equals(entry.fingerprint.hash, hash(file))) {
+                logger.info("Input model changed, reloading {}", file);
+                entries.remove(file);
+                evict(entry);
+                return null;
+            }
+            entry.fingerprint = new Fingerprint(lastModified, length, entry.fingerprint.hash);
+        }
+        entry.references++;
+        return entry.root;
+    }
+
+    /**
+     * Cache a processed model, which stays held by the caller until released. All its proxies have to be resolved
+     * already, since cached models are read by many callers without further synchronisation.
+     *
+     * @param file        Input model
+     * @param fingerprint Fingerprint of the file taken before it was processed
+     * @param root        Root element of the model
+     */
+    public synchronized void put(File file, Fingerprint fingerprint, Namespace root) {
+        Entry entry = new Entry(fingerprint, root);
+        entry.references = 1;
+        byRoot.put(root, entry);
+        Entry previous = entries.put(file, entry);
+        if (previous != null && previous != entry) {
+            evict(previous);
+        }
+    }
+
+    /**
+     * Give up the caller's reference to a model. The model is unloaded if it was evicted meanwhile and nobody else
+     * holds it.
+     *
+     * @param root Root element of a model
+     * @return true if the model belongs to this cache, false if the caller owns it and has to unload it itself
+     */
+    public synchronized boolean release(Namespace root) {
+        Entry entry = byRoot.get(root);
+        if (entry == null) {
+            return false;
+        }
+        if (entry.references > 0) {
+            entry.references--;
+        }
+        unloadIfUnused(entry);
+        return true;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Evict all models, models still held by callers are unloaded when they are released
+     */
+    public synchronized void clear() {
+        List<Entry> evicted = new ArrayList<>(entries.values());
+        entries.clear();
+        evicted.forEach(this::evict);
+    }
+
+    private void evict(Entry entry) {
+        entry.cached = false;
+        unloadIfUnused(entry);
+    }
+
+    private void unloadIfUnused(Entry entry) {
+        if (!entry.cached && entry.references == 0) {
+            byRoot.remove(entry.root);
+            unload(entry.root);
+        }
+    }
+
+    /**
+     * Unload a model together with everything else loaded into its resource set. Library resources are never part
+     * of a model's resource set, so the shared library is left untouched.
+     *
+     * @param root Root element of the model
+     */
+    static void unload(Namespace root) {
+        Resource resource = root.eResource();
+        if (resource == null) {
+            return;
+        }
+        ResourceSet resourceSet = resource.getResourceSet();
+        if (resourceSet == null) {
+            resource.unload();
+            return;
+        }
+        for (Resource r : resourceSet.getResources()) {
+            r.unload();
+        }
+        resourceSet.getResources().clear();
+        resourceSet.eAdapters().clear();
+    }
+
+    private static byte[] hash(File file) throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file.toPath()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * State of an input file when it was processed
+     */
+    public static class Fingerprint {
+        private final long lastModified;
+        private final long length;
+        private final byte[] hash;
+
+        private Fingerprint(long lastModified, long length, byte[] hash) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.hash = hash;
+        }
+    }
+
+    private static class Entry {
+        private Fingerprint fingerprint;
+        private final Namespace root;
+        private int references;
+        private boolean cached = true;
+
+        private Entry(Fingerprint fingerprint, Namespace root) {
+            this.fingerprint = fingerprint;
+            this.root = root;
+        }
+    }
+}
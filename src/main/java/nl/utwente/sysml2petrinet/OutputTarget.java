@@ -0,0 +1,120 @@
+package nl.utwente.sysml2petrinet;
+
+import nl.utwente.sysml2petrinet.PetriNet.PetriNet;
+import nl.utwente.sysml2petrinet.m2m.Transformer;
+import nl.utwente.sysml2petrinet.m2t_direct.TransformerPNML;
+import org.eclipse.emf.common.util.Monitor;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Built-in output formats. The output file is named after the input model, e.g. <code>shop.sysml</code> is exported
+ * as <code>shop.pnml</code> by {@link #ISO_PNML}; the suffixes differ, so all targets can share an output directory.
+ */
+public enum OutputTarget implements PetriNetExporter {
+    /**
+     * ISO/IEC 15909 PNML, written directly
+     */
+    ISO_PNML(".pnml") {
+        @Override
+        public void write(PetriNet petriNet, String filePath, OutputStream out, Monitor monitor) throws Exception {
+            TransformerPNML transformerPnml = new TransformerPNML(petriNet, filePath);
+            transformerPnml.setMonitor(monitor);
+            transformerPnml.writePNML(out, true);
+        }
+    },
+    /**
+     * PNML without the ISO/IEC 15909 namespace, written directly
+     */
+    LEGACY_PNML(".legacy.pnml") {
+        @Override
+        public void write(PetriNet petriNet, String filePath, OutputStream out, Monitor monitor) throws Exception {
+            TransformerPNML transformerPnml = new TransformerPNML(petriNet, filePath);
+            transformerPnml.setMonitor(monitor);
+            transformerPnml.writePNML(out, false);
+        }
+    },
+    /**
+     * The validated PetriNet metamodel instance as XMI
+     */
+    XMI(".xmi") {
+        @Override
+        public void write(PetriNet petriNet, String filePath, OutputStream out, Monitor monitor) throws Exception {
+            petrinet.PetriNet petriNetObject = Transformer.toEMF(petriNet);
+            Transformer.validate(petriNetObject);
+            SysML2PetriNet.ACCELEO_LOCK.lockInterruptibly();
+            try {
+                SysML2PetriNet.checkCanceled(monitor);
+                Transformer.saveToXMI(petriNetObject, out);
+            } finally {
+                SysML2PetriNet.ACCELEO_LOCK.unlock();
+            }
+        }
+    },
+    /**
+     * PNML generated by the Acceleo template from the validated XMI
+     */
+    ACCELEO_PNML(".acceleo.pnml") {
+        @Override
+        public void write(PetriNet petriNet, String filePath, OutputStream out, Monitor monitor) throws Exception {
+            petrinet.PetriNet petriNetObject = Transformer.toEMF(petriNet);
+            Transformer.validate(petriNetObject);
+            // The template names the PNML file after the Petri net
+            SysML2PetriNet.generatePNML(petriNetObject, petriNet.getName() + ".pnml", filePath, out, monitor);
+        }
+    };
+
+    private final String suffix;
+
+    OutputTarget(String suffix) {
+        this.suffix = suffix;
+    }
+
+    /**
+     * @param filePath .sysml model
+     * @return Name of the output file of the model
+     */
+    public String getOutputName(String filePath) {
+        String name = new File(filePath).getName();
+        return name.substring(0, name.lastIndexOf('.')) + suffix;
+    }
+
+    @Override
+    public List<File> export(PetriNet petriNet, String filePath, String outputDir) throws Exception {
+        File outputFile = new File(outputDir, getOutputName(filePath));
+        // Other targets may create the directory at the same time
+        Files.createDirectories(outputFile.getAbsoluteFile().getParentFile().toPath());
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile))) {
+            write(petriNet, filePath, out);
+        }
+        return List.of(outputFile);
+    }
+
+    /**
+     * Write the Petri net of a model to a stream instead of a file
+     *
+     * @param petriNet Petri net to export
+     * @param filePath .sysml model the Petri net was created from
+     * @param out      Stream to write to, left open
+     * @throws Exception Export failed
+     */
+    public void write(PetriNet petriNet, String filePath, OutputStream out) throws Exception {
+        write(petriNet, filePath, out, null);
+    }
+
+    /**
+     * Write the Petri net of a model to a stream, stopping once the monitor is cancelled
+     *
+     * @param petriNet Petri net to export
+     * @param filePath .sysml model the Petri net was created from
+     * @param out      Stream to write to, left open
+     * @param monitor  Monitor checked while writing and before taking the Acceleo lock, or null
+     * @throws Exception Export failed, or {@link java.util.concurrent.CancellationException} if cancelled
+     */
+    public abstract void write(PetriNet petriNet, String filePath, OutputStream out, Monitor monitor) throws Exception;
+}
@@ -0,0 +1,23 @@
+package nl.utwente.sysml2petrinet;
+
+import nl.utwente.sysml2petrinet.PetriNet.PetriNet;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Output format of a transformation, see {@link OutputTarget} for the built-in ones. The exporters of one model run
+ * concurrently on the same Petri net, which they must therefore only read.
+ */
+public interface PetriNetExporter {
+    /**
+     * Write the Petri net of a model
+     *
+     * @param petriNet  Petri net to export
+     * @param filePath  .sysml model the Petri net was created from, names the output files
+     * @param outputDir Output directory
+     * @return The files written
+     * @throws Exception Export failed
+     */
+    List<File> export(PetriNet petriNet, String filePath, String outputDir) throws Exception;
+}
@@ -1,29 +1,89 @@
 package nl.utwente.sysml2petrinet;
 
 import nl.utwente.sysml2petrinet.PetriNet.PetriNet;
+import nl.utwente.sysml2petrinet.batch.ArchiveDiscovery;
+import nl.utwente.sysml2petrinet.batch.BatchItem;
+import nl.utwente.sysml2petrinet.batch.BatchOptions;
+import nl.utwente.sysml2petrinet.batch.BatchPipeline;
+import nl.utwente.sysml2petrinet.batch.ModelDiscovery;
+import nl.utwente.sysml2petrinet.batch.OutputArchive;
+import nl.utwente.sysml2petrinet.library.LibraryArchive;
+import nl.utwente.sysml2petrinet.library.LibraryOptions;
 import nl.utwente.sysml2petrinet.m2m.Transformer;
 import nl.utwente.sysml2petrinet.m2t.main.GeneratePetriNet;
 import nl.utwente.sysml2petrinet.m2t_direct.TransformerPNML;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.emf.common.util.BasicMonitor;
+import org.eclipse.emf.common.util.Monitor;
 import org.eclipse.emf.common.util.URI;
 import org.omg.sysml.lang.sysml.Namespace;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class SysML2PetriNet {
     private static final Logger logger = LogManager.getLogger(SysML2PetriNet.class);
 
+    // Guards EMF's global registries and the Acceleo generator, see export
+    static final Lock ACCELEO_LOCK = new ReentrantLock();
+
+    // System property overriding the SysML library, a directory or a library archive
+    public static final String LIBRARY_PROPERTY = "sysml2petrinet.library";
+    // System property overriding the directory of the library snapshot, an empty value disables the snapshot
+    public static final String SNAPSHOT_DIR_PROPERTY = "sysml2petrinet.snapshotDir";
+
+    // Names models given as text, their resource URI needs the .sysml extension
+    private static final String TEXT_MODEL_NAME = "model.sysml";
+
     private final SysMLProcessor processor;
     private PetriNet petriNet; // For JUnit testing
 
     public SysML2PetriNet(){
-        String modelDir = "src/main/resources/sysml.library";
-        this.processor = new SysMLProcessor(modelDir);
+        String modelDir = System.getProperty(LIBRARY_PROPERTY, "src/main/resources/sysml.library");
+        if (System.getProperty(LIBRARY_PROPERTY) == null && !new File(modelDir).isDirectory()) {
+            // Not running from the source tree, use the library packaged with the application
+            modelDir = LibraryArchive.CLASSPATH_PREFIX + "/sysml.library.zip";
+        }
+        LibraryOptions options = new LibraryOptions();
+        options.setSnapshotDir(snapshotDir());
+        options.setParallelism(Runtime.getRuntime().availableProcessors());
+        options.setDiscardNodeModels(true);
+        this.processor = new SysMLProcessor(modelDir, options);
+    }
+
+    /**
+     * @return Directory of the library snapshot: the {@link #SNAPSHOT_DIR_PROPERTY} system property, or a directory
+     * in the user's cache directory. Null if snapshots are disabled.
+     */
+    static String snapshotDir() {
+        String dir = System.getProperty(SNAPSHOT_DIR_PROPERTY);
+        if (dir == null) {
+            return Path.of(System.getProperty("user.home"), ".cache", "sysml2petrinet", "sysml.library.snapshot").toString();
+        }
+        return dir.isEmpty() ? null : dir;
     }
 
     public PetriNet getPetriNet() {
@@ -31,42 +91,625 @@ public class SysML2PetriNet {
     }
 
     public void transform(String filePath, String outputXMI, String outputDir, boolean directTransformation, boolean isoStandard) throws Exception {
-        Namespace rootElement = processor.processSysMLFile(filePath);
-        if (rootElement != null) {
-            logger.info("Model inputted");
-            Transformer transformer = new Transformer(rootElement);
-            petriNet = transformer.transform();
-            if(directTransformation){
-                transformationDirect(petriNet, outputDir, filePath, isoStandard);
-            }else {
-                transformer.saveToXMI(petriNet, outputXMI);
-                transformation(outputXMI, outputDir);
+        petriNet = transformFile(filePath, outputXMI, outputDir, directTransformation, isoStandard);
+    }
+
+    /**
+     * Transform a model once and write it in several formats
+     *
+     * @param filePath  .sysml model
+     * @param outputDir Output directory
+     * @param targets   Output formats, e.g. {@link OutputTarget#ISO_PNML} and {@link OutputTarget#XMI}
+     * @return The files written
+     * @throws Exception Model could not be transformed or an export failed
+     */
+    public List<File> transform(String filePath, String outputDir, Collection<? extends PetriNetExporter> targets) throws Exception {
+        PetriNet result = toPetriNet(parse(filePath));
+        petriNet = result;
+        return export(result, filePath, outputDir, targets);
+    }
+
+    /**
+     * Export stage for several formats: the exporters share the Petri net and run in parallel
+     *
+     * @param petriNet  Petri net to export
+     * @param filePath  .sysml model the Petri net was created from, names the output files
+     * @param outputDir Output directory
+     * @param targets   Output formats
+     * @return The files written, in the order of the targets
+     * @throws Exception An export failed, the first failure in the order of the targets is thrown
+     */
+    public List<File> export(PetriNet petriNet, String filePath, String outputDir, Collection<? extends PetriNetExporter> targets) throws Exception {
+        if (targets.size() == 1) {
+            return targets.iterator().next().export(petriNet, filePath, outputDir);
+        }
+        List<Future<List<File>>> exports = new ArrayList<>();
+        // Exports mostly wait for the disk, or for the Acceleo lock
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (PetriNetExporter target : targets) {
+                exports.add(executor.submit(() -> target.export(petriNet, filePath, outputDir)));
             }
+        }
+        List<File> files = new ArrayList<>();
+        for (Future<List<File>> export : exports) {
+            try {
+                files.addAll(export.get());
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+        }
+        logger.info("Exported {} formats to: {}", targets.size(), outputDir);
+        return files;
+    }
+
+    /**
+     * Transform SysML source without using the file system
+     *
+     * @param text Content of a .sysml model
+     * @return The Petri net
+     * @throws Exception Model could not be processed or transformed
+     */
+    public PetriNet transformText(String text) throws Exception {
+        PetriNet result = toPetriNet(parse(text, TEXT_MODEL_NAME));
+        petriNet = result;
+        return result;
+    }
+
+    /**
+     * Transform SysML source and write the PNML to a stream, without using the file system
+     *
+     * @param text        Content of a .sysml model
+     * @param out         Stream the PNML is written to (UTF-8), left open
+     * @param isoStandard true for ISO/IEC 15909 PNML
+     * @return The Petri net
+     * @throws Exception Model could not be processed or transformed
+     */
+    public PetriNet transformText(String text, OutputStream out, boolean isoStandard) throws Exception {
+        PetriNet result = transformText(text);
+        new TransformerPNML(result, TEXT_MODEL_NAME).writePNML(out, isoStandard);
+        return result;
+    }
+
+    /**
+     * Transform SysML source and write the PNML to a writer, without using the file system
+     *
+     * @param text        Content of a .sysml model
+     * @param out         Writer the PNML is written to, left open
+     * @param isoStandard true for ISO/IEC 15909 PNML
+     * @return The Petri net
+     * @throws Exception Model could not be processed or transformed
+     */
+    public PetriNet transformText(String text, Writer out, boolean isoStandard) throws Exception {
+        PetriNet result = transformText(text);
+        new TransformerPNML(result, TEXT_MODEL_NAME).writePNML(out, isoStandard);
+        return result;
+    }
+
+    /**
+     * Transform SysML source read from a reader, see {@link #transformText(String, OutputStream, boolean)}
+     *
+     * @param in          SysML source, read to the end but left open
+     * @param out         Stream the PNML is written to (UTF-8), left open
+     * @param isoStandard true for ISO/IEC 15909 PNML
+     * @return The Petri net
+     * @throws Exception Model could not be read, processed or transformed
+     */
+    public PetriNet transform(Reader in, OutputStream out, boolean isoStandard) throws Exception {
+        StringWriter text = new StringWriter();
+        in.transferTo(text);
+        return transformText(text.toString(), out, isoStandard);
+    }
+
+    /**
+     * Transform UTF-8 SysML source read from a stream, see {@link #transformText(String, OutputStream, boolean)}
+     *
+     * @param in          SysML source, read to the end but left open
+     * @param out         Stream the PNML is written to (UTF-8), left open
+     * @param isoStandard true for ISO/IEC 15909 PNML
+     * @return The Petri net
+     * @throws Exception Model could not be read, processed or transformed
+     */
+    public PetriNet transform(InputStream in, OutputStream out, boolean isoStandard) throws Exception {
+        return transformText(new String(in.readAllBytes(), StandardCharsets.UTF_8), out, isoStandard);
+    }
+
+    /**
+     * Parse stage: load a .sysml model against the shared library
+     *
+     * @param filePath .sysml model
+     * @return Root element of the model, to be passed to {@link #toPetriNet(Namespace)}
+     * @throws Exception Model could not be processed
+     */
+    public Namespace parse(String filePath) throws Exception {
+        return parse(filePath, (Monitor) null);
+    }
 
-        } else {
+    /**
+     * Parse stage that stops linking the model once the monitor is cancelled
+     *
+     * @param filePath .sysml model
+     * @param monitor  Monitor whose cancellation stops the parse stage, or null
+     * @return Root element of the model, to be passed to {@link #toPetriNet(Namespace)}
+     * @throws Exception Model could not be processed, or {@link CancellationException} if cancelled
+     */
+    public Namespace parse(String filePath, Monitor monitor) throws Exception {
+        Namespace rootElement = processor.processSysMLFile(filePath, monitor);
+        if (rootElement == null) {
             throw new Exception("Failed to process or transform SysML file");
         }
+        logger.info("Model inputted");
+        return rootElement;
+    }
+
+    /**
+     * Parse stage for a model file whose content was read already, e.g. to hash exactly the bytes that are parsed
+     *
+     * @param filePath .sysml model, identifies the model
+     * @param content  Content of the file
+     * @return Root element of the model, to be passed to {@link #toPetriNet(Namespace)}
+     * @throws Exception Model could not be processed
+     */
+    public Namespace parseFile(String filePath, byte[] content) throws Exception {
+        Namespace rootElement = processor.processSysMLText(new String(content, StandardCharsets.UTF_8), URI.createFileURI(filePath));
+        if (rootElement == null) {
+            throw new Exception("Failed to process or transform SysML file " + filePath);
+        }
+        logger.info("Model inputted");
+        return rootElement;
+    }
+
+    /**
+     * Parse stage for models that are not stored as files
+     *
+     * @param text Content of the .sysml model
+     * @param name Name of the model, e.g. the path of an archive entry
+     * @return Root element of the model, to be passed to {@link #toPetriNet(Namespace)}
+     * @throws Exception Model could not be processed
+     */
+    public Namespace parse(String text, String name) throws Exception {
+        return parse(text, name, null);
+    }
+
+    /**
+     * Parse stage for models that are not stored as files, stopping to link the model once the monitor is cancelled
+     *
+     * @param text    Content of the .sysml model
+     * @param name    Name of the model, e.g. the path of an archive entry
+     * @param monitor Monitor whose cancellation stops the parse stage, or null
+     * @return Root element of the model, to be passed to {@link #toPetriNet(Namespace)}
+     * @throws Exception Model could not be processed, or {@link CancellationException} if cancelled
+     */
+    public Namespace parse(String text, String name, Monitor monitor) throws Exception {
+        Namespace rootElement = processor.processSysMLText(text, URI.createURI("memory:/" + name), monitor);
+        if (rootElement == null) {
+            throw new Exception("Failed to process or transform SysML model " + name);
+        }
+        logger.info("Model inputted");
+        return rootElement;
+    }
+
+    /**
+     * Model to model stage: transform a parsed model and unload it
+     *
+     * @param rootElement Root element returned by {@link #parse(String)}
+     * @return The Petri net
+     * @throws Exception Model violates the transformation constraints
+     */
+    public PetriNet toPetriNet(Namespace rootElement) throws Exception {
+        return toPetriNet(rootElement, null);
+    }
+
+    /**
+     * Model to model stage: transform a parsed model and unload it, also if the transformation is cancelled
+     *
+     * @param rootElement Root element returned by {@link #parse(String)}
+     * @param monitor     Monitor whose cancellation stops the transformation, or null
+     * @return The Petri net
+     * @throws Exception Model violates the transformation constraints
+     */
+    public PetriNet toPetriNet(Namespace rootElement, Monitor monitor) throws Exception {
+        try {
+            checkCanceled(monitor);
+            Transformer transformer = new Transformer(rootElement);
+            transformer.setMonitor(monitor);
+            return transformer.transform();
+        } finally {
+            // The Petri net does not reference the model, it can be unloaded right away
+            processor.release(rootElement);
+        }
+    }
+
+    /**
+     * Validation step of the indirect transformation: check the Petri net against the constraints of the PetriNet
+     * metamodel
+     *
+     * @param petriNet Petri net to validate
+     * @return The validated EMF model, to be passed to the export
+     * @throws Exception Violation on constraints
+     */
+    public petrinet.PetriNet validate(PetriNet petriNet) throws Exception {
+        petrinet.PetriNet petriNetObject = Transformer.toEMF(petriNet);
+        Transformer.validate(petriNetObject);
+        return petriNetObject;
+    }
+
+    /**
+     * Export stage: write the Petri net as PNML
+     *
+     * @param petriNet             Petri net to export
+     * @param filePath             .sysml model the Petri net was created from, names the PNML file
+     * @param outputXMI            Intermediate XMI file, only used by the indirect transformation
+     * @param outputDir            Output directory
+     * @param directTransformation true to write PNML directly, false to go through XMI and Acceleo
+     * @param isoStandard          true for ISO/IEC 15909 PNML
+     * @return The files written
+     * @throws Exception Export failed
+     */
+    public List<File> export(PetriNet petriNet, String filePath, String outputXMI, String outputDir, boolean directTransformation, boolean isoStandard) throws Exception {
+        return export(petriNet, null, filePath, outputXMI, outputDir, directTransformation, isoStandard);
+    }
+
+    /**
+     * Export stage: write the Petri net as PNML
+     *
+     * @param petriNet             Petri net to export
+     * @param validated            Result of {@link #validate(PetriNet)}, or null to validate as part of the export
+     * @param filePath             .sysml model the Petri net was created from, names the PNML file
+     * @param outputXMI            Intermediate XMI file, only used by the indirect transformation
+     * @param outputDir            Output directory
+     * @param directTransformation true to write PNML directly, false to go through XMI and Acceleo
+     * @param isoStandard          true for ISO/IEC 15909 PNML
+     * @return The files written
+     * @throws Exception Export failed
+     */
+    public List<File> export(PetriNet petriNet, petrinet.PetriNet validated, String filePath, String outputXMI, String outputDir, boolean directTransformation, boolean isoStandard) throws Exception {
+        return export(petriNet, validated, filePath, outputXMI, outputDir, directTransformation, isoStandard, null);
+    }
+
+    private List<File> export(PetriNet petriNet, petrinet.PetriNet validated, String filePath, String outputXMI, String outputDir, boolean directTransformation, boolean isoStandard, Monitor monitor) throws Exception {
+        if(directTransformation){
+            return List.of(transformationDirect(petriNet, outputDir, filePath, isoStandard, monitor));
+        }else {
+            petrinet.PetriNet petriNetObject = validated != null ? validated : validate(petriNet);
+            // EMF's global registries and the Acceleo generator are not meant for concurrent use. A lock rather than
+            // synchronized, so exports on virtual threads do not pin their carrier thread while waiting, and
+            // interruptibly, so a cancelled transformation does not wait for it.
+            ACCELEO_LOCK.lockInterruptibly();
+            try {
+                checkCanceled(monitor);
+                Transformer.saveToXMI(petriNetObject, outputXMI);
+                transformation(outputXMI, outputDir, monitor != null ? monitor : new BasicMonitor());
+            } finally {
+                ACCELEO_LOCK.unlock();
+            }
+            // The template names the PNML file after the Petri net
+            return List.of(new File(outputXMI), new File(outputDir, petriNet.getName() + ".pnml"));
+        }
+    }
+
+    /**
+     * Export stage for outputs that are not files: write the Petri net as PNML to a stream. The indirect
+     * transformation still goes through files, in a temporary directory, as Acceleo only generates files.
+     *
+     * @param petriNet             Petri net to export
+     * @param validated            Result of {@link #validate(PetriNet)}, or null to validate as part of the export
+     * @param filePath             .sysml model the Petri net was created from, names the PNML file
+     * @param directTransformation true to write PNML directly, false to go through XMI and Acceleo
+     * @param isoStandard          true for ISO/IEC 15909 PNML
+     * @param out                  Stream to write to, left open
+     * @return Name the PNML file would have in an output directory
+     * @throws Exception Export failed
+     */
+    public String exportPNML(PetriNet petriNet, petrinet.PetriNet validated, String filePath, boolean directTransformation, boolean isoStandard, OutputStream out) throws Exception {
+        if (directTransformation) {
+            TransformerPNML transformerPnml = new TransformerPNML(petriNet, filePath);
+            transformerPnml.writePNML(out, isoStandard);
+            return transformerPnml.getOutputName();
+        }
+        petrinet.PetriNet petriNetObject = validated != null ? validated : validate(petriNet);
+        // The template names the PNML file after the Petri net
+        String name = petriNet.getName() + ".pnml";
+        generatePNML(petriNetObject, name, filePath, out, null);
+        return name;
+    }
+
+    /**
+     * Run Acceleo on a validated EMF model in a temporary directory and copy the PNML it generated to a stream
+     *
+     * @param petriNetObject Validated EMF model
+     * @param name           Name of the PNML file the template generates
+     * @param filePath       .sysml model the Petri net was created from
+     * @param out            Stream to write to, left open
+     * @param monitor        Monitor whose cancellation stops waiting for and running Acceleo, or null
+     * @throws IOException          IO errors
+     * @throws InterruptedException Interrupted while waiting for Acceleo
+     */
+    static void generatePNML(petrinet.PetriNet petriNetObject, String name, String filePath, OutputStream out, Monitor monitor) throws IOException, InterruptedException {
+        Path tempDir = Files.createTempDirectory("sysml2petrinet");
+        try {
+            String outputXMI = tempDir.resolve(new File(filePath).getName() + ".xmi").toString();
+            ACCELEO_LOCK.lockInterruptibly();
+            try {
+                checkCanceled(monitor);
+                Transformer.saveToXMI(petriNetObject, outputXMI);
+                transformation(outputXMI, tempDir + File.separator, monitor != null ? monitor : new BasicMonitor());
+                checkCanceled(monitor);
+            } finally {
+                ACCELEO_LOCK.unlock();
+            }
+            Files.copy(tempDir.resolve(name), out);
+        } finally {
+            File[] files = tempDir.toFile().listFiles();
+            if (files != null) {
+                for (File f : files) {
+                    Files.deleteIfExists(f.toPath());
+                }
+            }
+            Files.deleteIfExists(tempDir);
+        }
+    }
+
+    /**
+     * Export stage for outputs that are not files: write the intermediate XMI of the indirect transformation to a
+     * stream
+     *
+     * @param validated Result of {@link #validate(PetriNet)}
+     * @param out       Stream to write to, left open
+     * @throws IOException IO errors
+     */
+    public void exportXMI(petrinet.PetriNet validated, OutputStream out) throws IOException {
+        // Registers the XMI factory globally, like the file export
+        ACCELEO_LOCK.lock();
+        try {
+            Transformer.saveToXMI(validated, out);
+        } finally {
+            ACCELEO_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Transform a model asynchronously, like {@link #transform(String, String, String, boolean, boolean)}. Cancelling
+     * the future, or exceeding the timeout, stops the transformation at its next check: before and after parsing,
+     * between cross-references while linking, in the loops of the transformation and the PNML writer, while waiting
+     * for and in Acceleo. Only the Xtext parser itself runs to its end. The model is unloaded either way.
+     *
+     * @param filePath             .sysml model
+     * @param outputXMI            Intermediate XMI file, only used by the indirect transformation
+     * @param outputDir            Output directory
+     * @param directTransformation true to write PNML directly, false to go through XMI and Acceleo
+     * @param isoStandard          true for ISO/IEC 15909 PNML
+     * @param timeout              Time after which the future fails with a {@link TimeoutException}, or null
+     * @return The Petri net, once exported
+     */
+    public CompletableFuture<PetriNet> transformAsync(String filePath, String outputXMI, String outputDir, boolean directTransformation, boolean isoStandard, Duration timeout) {
+        return runAsync(monitor -> {
+            PetriNet result = toPetriNet(parse(filePath, monitor), monitor);
+            export(result, null, filePath, outputXMI, outputDir, directTransformation, isoStandard, monitor);
+            return result;
+        }, timeout);
+    }
+
+    /**
+     * Transform SysML source asynchronously, like {@link #transformText(String, OutputStream, boolean)}, see
+     * {@link #transformAsync} for cancellation
+     *
+     * @param text        Content of a .sysml model
+     * @param out         Stream the PNML is written to (UTF-8), left open
+     * @param isoStandard true for ISO/IEC 15909 PNML
+     * @param timeout     Time after which the future fails with a {@link TimeoutException}, or null
+     * @return The Petri net, once written
+     */
+    public CompletableFuture<PetriNet> transformTextAsync(String text, OutputStream out, boolean isoStandard, Duration timeout) {
+        return runAsync(monitor -> {
+            PetriNet result = toPetriNet(parse(text, TEXT_MODEL_NAME, monitor), monitor);
+            TransformerPNML transformerPnml = new TransformerPNML(result, TEXT_MODEL_NAME);
+            transformerPnml.setMonitor(monitor);
+            transformerPnml.writePNML(out, isoStandard);
+            return result;
+        }, timeout);
+    }
+
+    /**
+     * Transform SysML source asynchronously and write it in one of the built-in formats, see {@link #transformAsync}
+     * for cancellation
+     *
+     * @param text    Content of a .sysml model
+     * @param target  Output format
+     * @param out     Stream the output is written to, left open
+     * @param timeout Time after which the future fails with a {@link TimeoutException}, or null
+     * @return The Petri net, once written
+     */
+    public CompletableFuture<PetriNet> transformTextAsync(String text, OutputTarget target, OutputStream out, Duration timeout) {
+        return transformTextAsync(text, target, out, timeout, null);
+    }
+
+    /**
+     * Transform SysML source asynchronously and write it in one of the built-in formats, and tell when the thread of
+     * the transformation ended. After a timeout or cancellation the future completes right away, while the thread
+     * only ends at the next check of the transformation, see {@link #transformAsync}.
+     *
+     * @param text    Content of a .sysml model
+     * @param target  Output format
+     * @param out     Stream the output is written to, left open
+     * @param timeout Time after which the future fails with a {@link TimeoutException}, or null
+     * @param ended   Run on the thread of the transformation once it ended, e.g. to release a worker; or null
+     * @return The Petri net, once written
+     */
+    public CompletableFuture<PetriNet> transformTextAsync(String text, OutputTarget target, OutputStream out, Duration timeout, Runnable ended) {
+        return runAsync(monitor -> {
+            PetriNet result = toPetriNet(parse(text, TEXT_MODEL_NAME, monitor), monitor);
+            checkCanceled(monitor);
+            target.write(result, TEXT_MODEL_NAME, out, monitor);
+            return result;
+        }, timeout, ended);
+    }
+
+    /**
+     * Run a transformation on its own virtual thread. The future is completed by the transformation, by
+     * cancellation or by the timeout, whichever comes first; in the latter two cases the monitor is cancelled and the
+     * thread interrupted, so the transformation stops and frees its memory.
+     */
+    private <T> CompletableFuture<T> runAsync(MonitoredTask<T> task, Duration timeout) {
+        return runAsync(task, timeout, null);
+    }
+
+    /**
+     * @param ended Run on the thread once the task ended, or null
+     */
+    private <T> CompletableFuture<T> runAsync(MonitoredTask<T> task, Duration timeout, Runnable ended) {
+        Monitor monitor = new BasicMonitor();
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Thread thread = Thread.ofVirtual().name("transform-async").unstarted(() -> {
+            try {
+                future.complete(task.run(monitor));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                if (ended != null) {
+                    ended.run();
+                }
+            }
+        });
+        future.whenComplete((result, error) -> {
+            if (error != null) {
+                monitor.setCanceled(true);
+                thread.interrupt();
+            }
+        });
+        thread.start();
+        if (timeout != null) {
+            future.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        return future;
+    }
+
+    static void checkCanceled(Monitor monitor) {
+        if (monitor != null && monitor.isCanceled()) {
+            throw new CancellationException("Transformation cancelled");
+        }
+    }
+
+    @FunctionalInterface
+    private interface MonitoredTask<T> {
+        T run(Monitor monitor) throws Exception;
+    }
+
+    private PetriNet transformFile(String filePath, String outputXMI, String outputDir, boolean directTransformation, boolean isoStandard) throws Exception {
+        PetriNet result = toPetriNet(parse(filePath));
+        export(result, filePath, outputXMI, outputDir, directTransformation, isoStandard);
+        return result;
     }
 
     public void transformMultiple(String fileDir, String outputDir,Boolean directTransformation, boolean isoStandard) throws Exception {
-        for(File f : processor.listSysmlFiles(new File(fileDir), false)){
-            transform(f.getAbsolutePath(), outputDir + f.getName() + ".xmi", outputDir, directTransformation, isoStandard);
+        transformMultiple(fileDir, outputDir, directTransformation, isoStandard, 1);
+    }
+
+    /**
+     * Transform all .sysml files of a directory, using a {@link BatchPipeline} whose workers share the loaded library.
+     * Every file produces the same output as in a sequential run. If files fail, the error of the first failing file
+     * in directory order is thrown and files not started yet are skipped.
+     *
+     * @param fileDir              Directory containing the .sysml files
+     * @param outputDir            Output directory
+     * @param directTransformation true to write PNML directly, false to go through XMI and Acceleo
+     * @param isoStandard          true for ISO/IEC 15909 PNML
+     * @param workers              Number of threads of each CPU-bound stage
+     * @throws Exception Transformation of a file failed
+     */
+    public void transformMultiple(String fileDir, String outputDir, Boolean directTransformation, boolean isoStandard, int workers) throws Exception {
+        List<File> files = processor.listSysmlFiles(new File(fileDir), false);
+        if (workers <= 1 || files.size() <= 1) {
+            for(File f : files){
+                transform(f.getAbsolutePath(), outputDir + f.getName() + ".xmi", outputDir, directTransformation, isoStandard);
+            }
+            return;
         }
+
+        BatchOptions options = new BatchOptions();
+        options.setWorkers(workers);
+        options.setDirectTransformation(directTransformation);
+        options.setIsoStandard(isoStandard);
+        transformMultiple(fileDir, outputDir, options);
+    }
+
+    /**
+     * Transform all .sysml files of a directory with a {@link BatchPipeline}. Models are discovered while the batch
+     * runs, so transformation starts right away even for large trees.
+     *
+     * @param fileDir   Directory containing the .sysml files
+     * @param outputDir Output directory, mirroring the input directory for recursive batches
+     * @param options   Batch options, e.g. the build cache to use
+     * @return The transformed files with their results
+     * @throws Exception Transformation of a file failed and the batch is fail-fast, or the walk of the input directory
+     *                   was aborted
+     */
+    public List<BatchItem> transformMultiple(String fileDir, String outputDir, BatchOptions options) throws Exception {
+        List<BatchItem> result;
+        try (ModelDiscovery discovery = new ModelDiscovery(fileDir, outputDir, options.getGlob(), options.isRecursive())) {
+            result = new BatchPipeline(this, options).run(discovery);
+            discovery.checkWalk();
+        }
+        return collect(result, options);
+    }
+
+    /**
+     * Transform the .sysml entries of a zip archive with a {@link BatchPipeline} and write the outputs into a zip
+     * archive, mirroring the directories of the input archive. Models are read from the archive and outputs are
+     * written to it directly, without temporary files (except for Acceleo, see
+     * {@link #exportPNML(PetriNet, petrinet.PetriNet, String, boolean, boolean, OutputStream)}).
+     * The build cache is not used for archive outputs.
+     *
+     * @param inputArchive  Zip archive containing the .sysml models
+     * @param outputArchive Zip archive to create
+     * @param options       Batch options
+     * @return The transformed models with their results, see {@link BatchItem#getEntries()}
+     * @throws Exception Transformation of a model failed and the batch is fail-fast
+     */
+    public List<BatchItem> transformArchive(String inputArchive, String outputArchive, BatchOptions options) throws Exception {
+        List<BatchItem> result;
+        try (ArchiveDiscovery discovery = new ArchiveDiscovery(inputArchive, "", options.getGlob(), options.isRecursive());
+             OutputArchive archive = new OutputArchive(new File(outputArchive))) {
+            result = new BatchPipeline(this, options, archive).run(discovery);
+        }
+        return collect(result, options);
+    }
+
+    private List<BatchItem> collect(List<BatchItem> result, BatchOptions options) throws Exception {
+        for (BatchItem item : result) {
+            if (item.isFailed() && options.isFailFast()) {
+                throw item.getError();
+            }
+            if (item.getPetriNet() != null) {
+                petriNet = item.getPetriNet();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return Hash identifying the content of the loaded SysML library
+     * @throws IOException Library could not be read
+     */
+    public String getLibraryHash() throws IOException {
+        return processor.getLibraryHash();
     }
 
-    private void transformation(String outputXMI, String outputDir) throws IOException {
+    private static void transformation(String outputXMI, String outputDir, Monitor monitor) throws IOException {
         // Initialize the Acceleo generator and perform m2t generation
         URI modelURI = URI.createFileURI(outputXMI);
         File targetFolder = new File(outputDir);
         List<String> arguments = new ArrayList<>();
         GeneratePetriNet generatePetriNet = new GeneratePetriNet(modelURI, targetFolder, arguments);
-        generatePetriNet.doGenerate(new BasicMonitor());
+        generatePetriNet.doGenerate(monitor);
+        checkCanceled(monitor);
         logger.info("PNML file generated");
     }
 
-    private void transformationDirect(PetriNet petriNet, String outputDir, String filePath, boolean isoStandard) throws IOException {
+    private File transformationDirect(PetriNet petriNet, String outputDir, String filePath, boolean isoStandard, Monitor monitor) throws IOException {
         TransformerPNML transformerPnml = new TransformerPNML(petriNet, filePath);
-        transformerPnml.saveToPNML(outputDir, isoStandard);
+        transformerPnml.setMonitor(monitor);
+        File pnml = transformerPnml.saveToPNML(outputDir, isoStandard);
         logger.info("Saved PNML to: {}", outputDir);
+        return pnml;
     }
 }
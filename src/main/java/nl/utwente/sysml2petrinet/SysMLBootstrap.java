@@ -0,0 +1,95 @@
+package nl.utwente.sysml2petrinet;
+
+import com.google.inject.Injector;
+import nl.utwente.sysml2petrinet.library.SharedLibrary;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.xtext.resource.XtextResourceSet;
+import org.omg.kerml.xtext.KerMLStandaloneSetup;
+import org.omg.sysml.lang.sysml.SysMLPackage;
+import org.omg.sysml.xtext.SysMLStandaloneSetup;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide Xtext setup. The SysML injector and the EMF registrations are created exactly once, and every loaded
+ * library is kept, so additional {@link SysMLProcessor}s only cost a map lookup.
+ */
+public final class SysMLBootstrap {
+    private static final Logger logger = LogManager.getLogger(SysMLBootstrap.class);
+    private static final Map<String, SharedLibrary> libraries = new ConcurrentHashMap<>();
+    private static volatile Injector injector;
+
+    private SysMLBootstrap() {
+    }
+
+    /**
+     * @return The SysML injector, created on first use
+     */
+    public static Injector getInjector() {
+        Injector result = injector;
+        if (result == null) {
+            synchronized (SysMLBootstrap.class) {
+                result = injector;
+                if (result == null) {
+                    long start = System.currentTimeMillis();
+                    KerMLStandaloneSetup.doSetup();
+                    SysMLPackage.eINSTANCE.eClass();
+                    result = new SysMLStandaloneSetup().createInjectorAndDoEMFRegistration();
+                    injector = result;
+                    logger.info("Xtext initialised in {} ms", System.currentTimeMillis() - start);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return A new, empty resource set configured for SysML and KerML
+     */
+    public static XtextResourceSet createResourceSet() {
+        return getInjector().getInstance(XtextResourceSet.class);
+    }
+
+    /**
+     * Get the library loaded for the key, loading it if there is none yet. A library is only kept if it loaded
+     * successfully, so a failed load is retried by the next processor.
+     *
+     * @param key    Identifies the library directory and the way it is loaded
+     * @param loader Loads the library into the given empty library
+     * @return The shared library
+     * @throws IllegalStateException Library could not be loaded
+     */
+    public static SharedLibrary getLibrary(String key, LibraryLoader loader) {
+        SharedLibrary library = libraries.get(key);
+        if (library != null) {
+            return library;
+        }
+        synchronized (libraries) {
+            library = libraries.get(key);
+            if (library == null) {
+                library = new SharedLibrary(createResourceSet());
+                try {
+                    loader.load(library);
+                } catch (Exception e) {
+                    throw new IllegalStateException("Could not load the SysML library " + key, e);
+                }
+                libraries.put(key, library);
+            }
+        }
+        return library;
+    }
+
+    /**
+     * Loads a library, see {@link #getLibrary(String, LibraryLoader)}
+     */
+    @FunctionalInterface
+    public interface LibraryLoader {
+        /**
+         * @param library Empty library to load into
+         * @throws Exception Library could not be loaded
+         */
+        void load(SharedLibrary library) throws Exception;
+    }
+}
@@ -1,23 +1,45 @@
 package nl.utwente.sysml2petrinet;
 
 import com.google.inject.Injector;
+import nl.utwente.sysml2petrinet.library.LibraryArchive;
+import nl.utwente.sysml2petrinet.library.LibraryOptions;
+import nl.utwente.sysml2petrinet.library.LibraryPackageIndex;
+import nl.utwente.sysml2petrinet.library.LibrarySnapshot;
+import nl.utwente.sysml2petrinet.library.ModelResourceSet;
+import nl.utwente.sysml2petrinet.library.ParallelLibraryLoader;
+import nl.utwente.sysml2petrinet.library.SharedLibrary;
+import org.eclipse.emf.common.util.Monitor;
 import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.emf.ecore.resource.ResourceSet;
 import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.xtext.linking.lazy.LazyLinkingResource;
 import org.eclipse.xtext.resource.XtextResourceSet;
 import org.omg.sysml.lang.sysml.*;
-import org.omg.sysml.xtext.SysMLStandaloneSetup;
-import org.omg.kerml.xtext.KerMLStandaloneSetup;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.locks.Lock;
 
+/**
+ * Loads the SysML library once and parses input models against it. The library is frozen after loading and shared,
+ * while every processed model gets its own resource set, so one processor can be used from many threads. Models are
+ * parsed and transformed concurrently, only linking them runs one at a time, see {@link SharedLibrary}.
+ */
 public class SysMLProcessor {
     private static final Logger logger = LogManager.getLogger(SysMLProcessor.class);
-    private final ResourceSet resourceSet;
+    private final Injector injector;
+    private final SharedLibrary library;
+    private final ParallelLibraryLoader libraryLoader;
     private final String modelDir;
+    private final LibraryOptions options;
+    private ModelCache modelCache;
 
     /**
      * A class to initialise sysml resources and resolve all proxies for derived attribute in the model
@@ -25,12 +47,97 @@ public class SysMLProcessor {
      * @param modelDir Directory of the model
      */
     public SysMLProcessor(String modelDir) {
+        this(modelDir, new LibraryOptions());
+    }
+
+    /**
+     * A class to initialise sysml resources and resolve all proxies for derived attribute in the model.
+     * Processors for the same library and the same loading mode, compaction and snapshot directory share one library,
+     * so only the first one loads it.
+     *
+     * @param modelDir Directory of the model, or a library archive (see {@link LibraryArchive#open(String)})
+     * @param options  Library loading options
+     * @throws IllegalStateException Library could not be loaded
+     */
+    public SysMLProcessor(String modelDir, LibraryOptions options) {
         this.modelDir = modelDir;
-        KerMLStandaloneSetup.doSetup();
-        SysMLPackage.eINSTANCE.eClass();
-        Injector injector = new SysMLStandaloneSetup().createInjectorAndDoEMFRegistration();
-        this.resourceSet = injector.getInstance(XtextResourceSet.class);
-        loadSysMLFiles();
+        this.options = options;
+        this.injector = SysMLBootstrap.getInjector();
+        this.libraryLoader = new ParallelLibraryLoader(injector.getProvider(XtextResourceSet.class), options.getParallelism());
+        if (options.isShared()) {
+            this.library = SysMLBootstrap.getLibrary(libraryKey(), this::loadSysMLFiles);
+        } else {
+            this.library = new SharedLibrary(SysMLBootstrap.createResourceSet());
+            try {
+                loadSysMLFiles(library);
+            } catch (Exception e) {
+                throw new IllegalStateException("Could not load the SysML library " + modelDir, e);
+            }
+        }
+    }
+
+    /**
+     * @return The library models are linked against, shared with other processors of the same library
+     */
+    SharedLibrary getLibrary() {
+        return library;
+    }
+
+    /**
+     * @return Key of the library among the shared ones, covering every option that changes how it is loaded
+     */
+    private String libraryKey() {
+        String key;
+        if (LibraryArchive.isArchive(modelDir)) {
+            // Archives are always loaded eagerly
+            key = modelDir;
+        } else {
+            key = canonicalPath(modelDir) + (options.isLazy() ? "#lazy" : "#eager");
+        }
+        key += options.isDiscardNodeModels() ? "#compact" : "#nodes";
+        if (options.getSnapshotDir() != null) {
+            key += "#snapshot=" + canonicalPath(options.getSnapshotDir());
+        }
+        return key;
+    }
+
+    private static String canonicalPath(String path) {
+        try {
+            return new File(path).getCanonicalPath();
+        } catch (IOException e) {
+            return new File(path).getAbsolutePath();
+        }
+    }
+
+    /**
+     * Keep up to the given number of processed models loaded, so asking again for an unchanged file returns the same
+     * model without parsing it. With size 0 (the default) every call parses the file again.
+     *
+     * @param size Maximum number of cached models
+     */
+    public void setModelCacheSize(int size) {
+        if (modelCache != null) {
+            modelCache.clear();
+        }
+        this.modelCache = size > 0 ? new ModelCache(size) : null;
+    }
+
+    /**
+     * @return Hash of the library content and the toolchain jars, independent of their locations
+     * @throws IOException Library could not be read
+     */
+    public String getLibraryHash() throws IOException {
+        // Threads asking at the same time all compute the same hash, which is cheaper than making linking wait for it
+        if (library.getHash() == null) {
+            if (LibraryArchive.isArchive(modelDir)) {
+                try (LibraryArchive archive = LibraryArchive.open(modelDir)) {
+                    library.setHash(LibrarySnapshot.computeContentHash(archive));
+                }
+            } else {
+                library.setHash(LibrarySnapshot.computeContentHash(new File(modelDir)));
+            }
+        }
+        return library.getHash();
     }
 
     /**
@@ -55,30 +162,132 @@ public class SysMLProcessor {
     }
 
     /**
-     * Load sysml library files and resolve all proxies
+     * Load sysml library files and resolve all proxies, using the library snapshot when one is configured.
+     * In lazy mode only the package index is built here.
+     *
+     * @param library Empty library to load into
+     * @throws Exception Library could not be loaded
      */
-    private void loadSysMLFiles() {
-        try {
-            List<File> allSysmlFiles = listSysmlFiles(new File(modelDir), true);
-            logger.info("Found {} sysml library files", allSysmlFiles.size());
+    private void loadSysMLFiles(SharedLibrary library) throws Exception {
+        ResourceSet resourceSet = library.getResourceSet();
+        library.setCompact(options.isDiscardNodeModels());
+        if (!LibraryArchive.isArchive(modelDir)) {
+            loadSysMLFiles(library, null);
+            return;
+        }
+        // Archives are always loaded completely, so the archive is not needed once the library is frozen
+        try (LibraryArchive archive = LibraryArchive.open(modelDir)) {
+            resourceSet.getURIConverter().getURIHandlers().add(0, archive);
+            try {
+                loadSysMLFiles(library, archive);
+            } finally {
+                resourceSet.getURIConverter().getURIHandlers().remove(archive);
+            }
+        }
+    }
 
-            for (File f : allSysmlFiles) {
-                resourceSet.getResource(URI.createFileURI(f.getAbsolutePath()), true);
+    private void loadSysMLFiles(SharedLibrary library, LibraryArchive archive) throws Exception {
+        ResourceSet resourceSet = library.getResourceSet();
+        if (options.isLazy()) {
+            if (archive == null) {
+                library.setIndex(new LibraryPackageIndex(new File(modelDir)));
+                return;
+            }
+            logger.warn("Lazy loading needs a library directory, loading {} eagerly", modelDir);
+        }
+        LibrarySnapshot snapshot = null;
+        if (options.getSnapshotDir() != null) {
+            File snapshotRoot = new File(options.getSnapshotDir());
+            snapshot = archive != null ? new LibrarySnapshot(archive, snapshotRoot) : new LibrarySnapshot(new File(modelDir), snapshotRoot);
+            if (snapshot.load(resourceSet)) {
+                library.freeze(snapshot.loadIndex());
+                return;
             }
-            logger.info("Loaded {} sysml library files", allSysmlFiles.size());
-            logger.info("All proxies processed.");
-        } catch (Exception e) {
-            logger.error("Error loading SysML files", e);
         }
+
+        List<URI> allSysmlFiles = new ArrayList<>();
+        if (archive != null) {
+            for (String entry : archive.getEntries()) {
+                if (entry.endsWith(".sysml")) {
+                    allSysmlFiles.add(archive.getURI(entry));
+                }
+            }
+        } else {
+            for (File f : listSysmlFiles(new File(modelDir), true)) {
+                allSysmlFiles.add(URI.createFileURI(f.getAbsolutePath()));
+            }
+        }
+        if (allSysmlFiles.isEmpty()) {
+            throw new IOException("No sysml library files in " + modelDir);
+        }
+        logger.info("Found {} sysml library files", allSysmlFiles.size());
+
+        libraryLoader.load(allSysmlFiles, resourceSet);
+        logger.info("Loaded {} sysml library files", allSysmlFiles.size());
+        library.freeze();
+        logger.info("All proxies processed.");
+        if (snapshot != null) {
+            try {
+                snapshot.save(resourceSet, library.getDescriptions());
+            } catch (IOException e) {
+                logger.warn("Could not save library snapshot", e);
+            }
+        }
+    }
+
+    /**
+     * Load the library files a model needs that are not loaded yet. Loading is serialised on the library, models
+     * being processed meanwhile only see the library resources frozen before.
+     *
+     * @param needed Library files the model needs, see {@link LibraryPackageIndex#resolve(File)}
+     * @throws IOException Library could not be read
+     */
+    private void loadLibraryFor(Set<File> needed) throws IOException {
+        Lock lock = library.getLock();
+        lock.lock();
+        try {
+            List<File> missing = library.claim(needed);
+            if (!missing.isEmpty()) {
+                libraryLoader.load(missing.stream().map(f -> URI.createFileURI(f.getAbsolutePath())).toList(), library.getResourceSet());
+                library.freeze();
+            }
+            logger.info("Loaded {} additional sysml library files ({} in total)", missing.size(), library.getLoadedFileCount());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Create a resource set for one input model that links against the shared library
+     *
+     * @return New resource set
+     */
+    private ResourceSet createModelResourceSet() {
+        ModelResourceSet resourceSet = new ModelResourceSet(library);
+        injector.injectMembers(resourceSet);
+        return resourceSet;
     }
 
     /**
-     * Given a .sysml model and return root element
+     * Given a .sysml model and return root element. The model is loaded into its own resource set, so this method
+     * may be called concurrently.
      *
      * @param filePath .sysml model
      * @return root element of the model
      */
     public Namespace processSysMLFile(String filePath) {
+        return processSysMLFile(filePath, null);
+    }
+
+    /**
+     * Like {@link #processSysMLFile(String)}, but stops linking the model once the monitor is cancelled
+     *
+     * @param filePath .sysml model
+     * @param monitor  Monitor checked while loading and linking, or null
+     * @return root element of the model
+     * @throws CancellationException The monitor was cancelled, the model is unloaded
+     */
+    public Namespace processSysMLFile(String filePath, Monitor monitor) {
         try {
             // Check if file exists
             File file = new File(filePath);
@@ -88,23 +297,157 @@ public class SysMLProcessor {
                 logger.info("File does NOT exist: {}", file.getAbsolutePath());
                 return null;
             }
-
-            Resource resource = resourceSet.getResource(URI.createFileURI(filePath), true);
-            // Check for errors and contents
-            if (resource == null || resource.getContents().isEmpty()) {
-                logger.error("Failed to load resource or resource is empty.");
-                return null;
+            ModelCache.Fingerprint fingerprint = null;
+            if (modelCache != null) {
+                Namespace cached = modelCache.get(file);
+                if (cached != null) {
+                    logger.info("Using cached model");
+                    return cached;
+                }
+                fingerprint = ModelCache.fingerprint(file);
             }
-            if (!resource.getErrors().isEmpty() || !resource.getWarnings().isEmpty()) {
-                logger.error("Input model errors:");
-                resource.getErrors().forEach(err -> logger.error("  {}", err));
-                throw new Exception("Input model has errors");
+            if (library.getIndex() != null) {
+                loadLibraryFor(library.getIndex().resolve(file));
             }
 
-            return (Namespace) resource.getContents().getFirst();
+            Namespace root = load(URI.createFileURI(filePath), null, monitor);
+            if (root != null && modelCache != null) {
+                modelCache.put(file, fingerprint, root);
+            }
+            return root;
+        } catch (CancellationException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Error processing SysML file", e);
             return null;
         }
     }
+
+    /**
+     * Given the content of a .sysml model and return root element, e.g. for models that are not stored as files.
+     * May be called concurrently, like {@link #processSysMLFile(String)}, but the result is never cached.
+     *
+     * @param text Content of the model
+     * @param uri  URI identifying the model, its file extension has to be .sysml
+     * @return root element of the model
+     */
+    public Namespace processSysMLText(String text, URI uri) {
+        return processSysMLText(text, uri, null);
+    }
+
+    /**
+     * Like {@link #processSysMLText(String, URI)}, but stops linking the model once the monitor is cancelled
+     *
+     * @param text    Content of the model
+     * @param uri     URI identifying the model, its file extension has to be .sysml
+     * @param monitor Monitor checked while loading and linking, or null
+     * @return root element of the model
+     * @throws CancellationException The monitor was cancelled, the model is unloaded
+     */
+    public Namespace processSysMLText(String text, URI uri, Monitor monitor) {
+        try {
+            if (library.getIndex() != null) {
+                loadLibraryFor(library.getIndex().resolve(text));
+            }
+            return load(uri, text, monitor);
+        } catch (CancellationException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.error("Error processing SysML model {}", uri, e);
+            return null;
+        }
+    }
+
+    /**
+     * Load a model into its own resource set and link it against the library. Parsing only builds the model and the
+     * proxies of its cross-references, so models are parsed concurrently. Linking writes to library objects, so it is
+     * serialised on the library's lock; the linked model is only read afterwards. The monitor is checked before
+     * parsing, between parsing and linking and by the lazy linker between cross-references; parsing itself cannot be
+     * interrupted.
+     *
+     * @param uri     URI of the model
+     * @param text    Content of the model, or null to read it from the URI
+     * @param monitor Monitor whose cancellation stops linking, or null
+     * @return root element of the model, or null if the resource is empty
+     * @throws Exception The model could not be read or has errors
+     */
+    private Namespace load(URI uri, String text, Monitor monitor) throws Exception {
+        checkCanceled(monitor, null);
+        Resource resource;
+        if (text == null) {
+            resource = createModelResourceSet().getResource(uri, true);
+        } else {
+            resource = createModelResourceSet().createResource(uri);
+            resource.load(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), Collections.emptyMap());
+        }
+        Namespace root = getRoot(resource);
+        if (root == null) {
+            return null;
+        }
+        checkCanceled(monitor, root);
+        Lock lock = library.getLock();
+        try {
+            lock.lockInterruptibly();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ModelCache.unload(root);
+            throw new CancellationException("Interrupted while waiting for the library");
+        }
+        try {
+            if (monitor != null && resource instanceof LazyLinkingResource lazy) {
+                lazy.resolveLazyCrossReferences(monitor::isCanceled);
+                checkCanceled(monitor, root);
+            }
+            EcoreUtil.resolveAll(resource);
+            SharedLibrary.forceDerivedState(resource);
+        } finally {
+            lock.unlock();
+        }
+        return root;
+    }
+
+    /**
+     * @param root Model loaded so far, unloaded when cancelled; or null
+     */
+    private static void checkCanceled(Monitor monitor, Namespace root) {
+        if (monitor != null && monitor.isCanceled()) {
+            if (root != null) {
+                ModelCache.unload(root);
+            }
+            throw new CancellationException("Transformation cancelled");
+        }
+    }
+
+    /**
+     * @param resource Loaded model
+     * @return root element of the model, or null if the resource is empty
+     * @throws Exception The model has errors
+     */
+    private Namespace getRoot(Resource resource) throws Exception {
+        // Check for errors and contents
+        if (resource == null || resource.getContents().isEmpty()) {
+            logger.error("Failed to load resource or resource is empty.");
+            return null;
+        }
+        if (!resource.getErrors().isEmpty() || !resource.getWarnings().isEmpty()) {
+            logger.error("Input model errors:");
+            resource.getErrors().forEach(err -> logger.error("  {}", err));
+            throw new Exception("Input model has errors");
+        }
+        return (Namespace) resource.getContents().getFirst();
+    }
+
+    /**
+     * Unload a model returned by {@link #processSysMLFile(String)} once it is no longer needed, so a long batch does
+     * not keep every model in memory. Every model has to be released exactly once; cached models stay loaded until
+     * the cache evicts them and the last caller holding them released them.
+     *
+     * @param root Root element of the model, may be null
+     */
+    public void release(Namespace root) {
+        if (root == null || (modelCache != null && modelCache.release(root))) {
+            return;
+        }
+        ModelCache.unload(root);
+    }
 } 
\ No newline at end of file
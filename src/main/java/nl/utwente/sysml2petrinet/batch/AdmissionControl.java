@@ -0,0 +1,98 @@
+package nl.utwente.sysml2petrinet.batch;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.ecore.EObject;
+
+import java.io.File;
+
+/**
+ * Admits models into a batch against a heap budget. Before a model is parsed its memory cost is estimated from the
+ * size of its source; once parsed the estimate is corrected from the number of elements in the model, and the ratio
+ * between the two is learnt for the estimates of the following models. A model waits until its estimate fits in the
+ * budget, except when no other model is loaded, so a model larger than the whole budget still gets its turn.
+ * A model holds its share of the budget until it is unloaded after the model to model transformation.
+ */
+public class AdmissionControl {
+    private static final Logger logger = LogManager.getLogger(AdmissionControl.class);
+    // Heap of a parsed and linked model, node model included
+    private static final long BYTES_PER_ELEMENT = 4096;
+    private static final double INITIAL_BYTES_PER_SOURCE_BYTE = 200;
+
+    private final long budget;
+    private long used;
+    private double bytesPerSourceByte = INITIAL_BYTES_PER_SOURCE_BYTE;
+
+    /**
+     * @param budget Heap in bytes that models in progress may use together
+     */
+    public AdmissionControl(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Wait until the estimated cost of a model fits in the budget and reserve it
+     *
+     * @param input .sysml model about to be parsed
+     * @return Bytes reserved, to be passed to {@link #adjust} or {@link #release}
+     * @throws InterruptedException Interrupted while waiting
+     */
+    public long admit(File input) throws InterruptedException {
+        return admit(input.getPath(), input.length());
+    }
+
+    /**
+     * Wait until the estimated cost of a model fits in the budget and reserve it
+     *
+     * @param model Name of the model about to be parsed
+     * @param size  Size of the model in bytes
+     * @return Bytes reserved, to be passed to {@link #adjust} or {@link #release}
+     * @throws InterruptedException Interrupted while waiting
+     */
+    public synchronized long admit(String model, long size) throws InterruptedException {
+        long cost = (long) (size * bytesPerSourceByte);
+        if (used > 0 && used + cost > budget) {
+            logger.info("Holding back {} (about {} MB) until memory is released", model, cost >> 20);
+            while (used > 0 && used + cost > budget) {
+                wait();
+            }
+        }
+        used += cost;
+        return cost;
+    }
+
+    /**
+     * Replace the estimate of a parsed model by one based on its element count. The model is loaded already, so a
+     * larger estimate is reserved without waiting and holds back the models after it instead.
+     *
+     * @param size     Size of the parsed model in bytes
+     * @param root     Root element of the model
+     * @param reserved Bytes reserved so far
+     * @return Bytes reserved now
+     */
+    public synchronized long adjust(long size, EObject root, long reserved) {
+        long elements = 1;
+        for (TreeIterator<EObject> it = root.eAllContents(); it.hasNext(); it.next()) {
+            elements++;
+        }
+        long cost = elements * BYTES_PER_ELEMENT;
+        if (size > 0) {
+            // Moving average, so a single unusual model does not dominate the estimates
+            bytesPerSourceByte = 0.8 * bytesPerSourceByte + 0.2 * ((double) cost / size);
+        }
+        used += cost - reserved;
+        if (cost < reserved) {
+            notifyAll();
+        }
+        return cost;
+    }
+
+    /**
+     * @param reserved Bytes reserved for a model that is no longer loaded
+     */
+    public synchronized void release(long reserved) {
+        used -= reserved;
+        notifyAll();
+    }
+}
@@ -0,0 +1,106 @@
+package nl.utwente.sysml2petrinet.batch;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Finds the models of a batch in a zip archive. Entries are read from the archive one at a time when the pipeline
+ * takes them, nothing is extracted to disk. The output directory of a model mirrors its directory in the archive;
+ * entries with an absolute path or <code>..</code> segments fail instead.
+ */
+public class ArchiveDiscovery implements Iterator<BatchItem>, AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(ArchiveDiscovery.class);
+
+    private final ZipFile archive;
+    private final Enumeration<? extends ZipEntry> entries;
+    private final String outputRoot;
+    private final PathMatcher matcher;
+    private final boolean recursive;
+    private ZipEntry next;
+    private int found;
+    private boolean done;
+
+    /**
+     * Open the archive
+     *
+     * @param archivePath Zip archive containing the models
+     * @param outputDir   Directory, or directory in the output archive, the output tree is created in, empty or ending
+     *                    with a separator
+     * @param glob        Glob the path of a model in the archive has to match, e.g. <code>**.sysml</code>
+     * @param recursive   true to include subdirectories of the archive
+     * @throws IOException Archive could not be opened
+     */
+    public ArchiveDiscovery(String archivePath, String outputDir, String glob, boolean recursive) throws IOException {
+        this.archive = new ZipFile(archivePath);
+        this.entries = archive.entries();
+        this.outputRoot = outputDir;
+        this.matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        this.recursive = recursive;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null && entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            String name = entry.getName();
+            if (!entry.isDirectory() && (recursive || name.indexOf('/') < 0) && matcher.matches(Path.of(name))) {
+                next = entry;
+            }
+        }
+        if (next == null && !done) {
+            done = true;
+            logger.info("Found {} models in {}", found, archive.getName());
+        }
+        return next != null;
+    }
+
+    @Override
+    public BatchItem next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ZipEntry entry = next;
+        next = null;
+        found++;
+        String name;
+        try {
+            // Entry names are untrusted, they must not lead the outputs out of the output directory
+            name = OutputArchive.entryName(entry.getName());
+        } catch (IOException e) {
+            return failed(entry.getName(), outputRoot, e);
+        }
+        int slash = name.lastIndexOf('/');
+        String outputDir = outputRoot + (slash >= 0 ? name.substring(0, slash + 1).replace('/', File.separatorChar) : "");
+        try (InputStream in = archive.getInputStream(entry)) {
+            return new BatchItem(name, in.readAllBytes(), outputDir);
+        } catch (IOException e) {
+            return failed(name, outputDir, e);
+        }
+    }
+
+    /**
+     * Fails the model in the pipeline rather than the whole batch
+     */
+    private static BatchItem failed(String name, String outputDir, IOException e) {
+        BatchItem item = new BatchItem(name, new byte[0], outputDir);
+        item.setError(e);
+        return item;
+    }
+
+    @Override
+    public void close() throws IOException {
+        archive.close();
+    }
+}
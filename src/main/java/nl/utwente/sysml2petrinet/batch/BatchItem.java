@@ -0,0 +1,247 @@
+package nl.utwente.sysml2petrinet.batch;
+
+import nl.utwente.sysml2petrinet.PetriNet.PetriNet;
+import org.omg.sysml.lang.sysml.Namespace;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * One model of a batch on its way through the {@link BatchPipeline}. Every stage hands the item to the next one,
+ * an item that failed skips the remaining stages.
+ */
+public class BatchItem {
+    private final File input;
+    private final String outputDir;
+    private final boolean inMemory;
+    private byte[] content;
+    private final long size;
+    private Namespace root;
+    private PetriNet petriNet;
+    private petrinet.PetriNet validated;
+    private Exception error;
+    private String cacheKey;
+    private boolean cached;
+    private List<File> outputs = List.of();
+    private List<String> entries = List.of();
+    private int nodeCount = -1;
+    private int arcCount = -1;
+    private long reservedBytes;
+    private long parseMillis;
+    private long transformMillis;
+    private long validationMillis;
+    private long exportMillis;
+
+    /**
+     * @param input     .sysml model
+     * @param outputDir Directory the outputs of the model are written to
+     */
+    public BatchItem(File input, String outputDir) {
+        this.input = input;
+        this.outputDir = outputDir;
+        this.inMemory = false;
+        this.size = input != null ? input.length() : 0;
+    }
+
+    /**
+     * @param name      Name of a model that is not stored as a file, e.g. the path of an archive entry
+     * @param content   Content of the model
+     * @param outputDir Directory, or directory in the output archive, the outputs of the model are written to
+     */
+    public BatchItem(String name, byte[] content, String outputDir) {
+        this.input = new File(name);
+        this.outputDir = outputDir;
+        this.inMemory = true;
+        this.content = content;
+        this.size = content.length;
+    }
+
+    /**
+     * @return Content of the model, null if it is parsed already or is a file that was not read before parsing
+     */
+    public byte[] getContent() {
+        return content;
+    }
+
+    /**
+     * @param content Content of a model file, read to compute its cache key; it is parsed instead of the file then
+     */
+    void setContent(byte[] content) {
+        this.content = content;
+    }
+
+    /**
+     * @return Size of the model in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    void releaseContent() {
+        this.content = null;
+    }
+
+    /**
+     * @return true if the model is not stored as a file, see {@link #getContent()}
+     */
+    public boolean isInMemory() {
+        return inMemory;
+    }
+
+    public File getInput() {
+        return input;
+    }
+
+    public String getOutputDir() {
+        return outputDir;
+    }
+
+    /**
+     * @return Path of the intermediate XMI file of the indirect transformation
+     */
+    public String getOutputXMI() {
+        return outputDir + input.getName() + ".xmi";
+    }
+
+    Namespace getRoot() {
+        return root;
+    }
+
+    void setRoot(Namespace root) {
+        this.root = root;
+    }
+
+    /**
+     * @return The Petri net of the model, or null if the model failed
+     */
+    public PetriNet getPetriNet() {
+        return petriNet;
+    }
+
+    void setPetriNet(PetriNet petriNet) {
+        this.petriNet = petriNet;
+        this.nodeCount = petriNet.getNodes().size();
+        this.arcCount = petriNet.getArcs().size();
+    }
+
+    petrinet.PetriNet getValidated() {
+        return validated;
+    }
+
+    void setValidated(petrinet.PetriNet validated) {
+        this.validated = validated;
+    }
+
+    /**
+     * @return Number of nodes of the Petri net, or -1 if the model was not transformed
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return Number of arcs of the Petri net, or -1 if the model was not transformed
+     */
+    public int getArcCount() {
+        return arcCount;
+    }
+
+    long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    void setReservedBytes(long reservedBytes) {
+        this.reservedBytes = reservedBytes;
+    }
+
+    public long getParseMillis() {
+        return parseMillis;
+    }
+
+    void setParseMillis(long parseMillis) {
+        this.parseMillis = parseMillis;
+    }
+
+    public long getTransformMillis() {
+        return transformMillis;
+    }
+
+    void setTransformMillis(long transformMillis) {
+        this.transformMillis = transformMillis;
+    }
+
+    /**
+     * @return Time spent validating the Petri net, always 0 for the direct transformation which does not validate
+     */
+    public long getValidationMillis() {
+        return validationMillis;
+    }
+
+    void setValidationMillis(long validationMillis) {
+        this.validationMillis = validationMillis;
+    }
+
+    public long getExportMillis() {
+        return exportMillis;
+    }
+
+    void setExportMillis(long exportMillis) {
+        this.exportMillis = exportMillis;
+    }
+
+    /**
+     * @return The error the model failed with, or null
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    void setError(Exception error) {
+        this.error = error;
+    }
+
+    public boolean isFailed() {
+        return error != null;
+    }
+
+    String getCacheKey() {
+        return cacheKey;
+    }
+
+    void setCacheKey(String cacheKey) {
+        this.cacheKey = cacheKey;
+    }
+
+    /**
+     * @return true if the outputs were restored from the build cache, the model has no Petri net then
+     */
+    public boolean isCached() {
+        return cached;
+    }
+
+    void setCached(boolean cached) {
+        this.cached = cached;
+    }
+
+    /**
+     * @return The files written for the model
+     */
+    public List<File> getOutputs() {
+        return outputs;
+    }
+
+    void setOutputs(List<File> outputs) {
+        this.outputs = outputs;
+    }
+
+    /**
+     * @return The entries written to the output archive for the model
+     */
+    public List<String> getEntries() {
+        return entries;
+    }
+
+    void setEntries(List<String> entries) {
+        this.entries = entries;
+    }
+}
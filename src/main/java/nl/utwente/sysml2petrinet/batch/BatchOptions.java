@@ -0,0 +1,154 @@
+package nl.utwente.sysml2petrinet.batch;
+
+/**
+ * Options controlling how {@link BatchPipeline} transforms a batch of models
+ */
+public class BatchOptions {
+    private int workers;
+    private int queueCapacity;
+    private boolean directTransformation;
+    private boolean isoStandard;
+    private String cacheDir;
+    private int cacheMaxAgeDays;
+    private boolean failFast;
+    private String reportFile;
+    private long heapBudget;
+    private boolean recursive;
+    private String glob;
+
+    public BatchOptions() {
+        this.workers = Runtime.getRuntime().availableProcessors();
+        this.queueCapacity = 16;
+        this.directTransformation = true;
+        this.isoStandard = false;
+        this.cacheDir = null;
+        this.cacheMaxAgeDays = 30;
+        this.failFast = true;
+        this.reportFile = null;
+        this.heapBudget = 0;
+        this.recursive = false;
+        this.glob = "**.sysml";
+    }
+
+    /**
+     * @return Number of threads of each CPU-bound stage (parsing and model to model transformation)
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    /**
+     * @return Maximum number of models waiting between two stages, and of exports in progress
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * @return true to write PNML directly, false to go through XMI and Acceleo
+     */
+    public boolean isDirectTransformation() {
+        return directTransformation;
+    }
+
+    public void setDirectTransformation(boolean directTransformation) {
+        this.directTransformation = directTransformation;
+    }
+
+    /**
+     * @return true for ISO/IEC 15909 PNML, only used by the direct transformation
+     */
+    public boolean isIsoStandard() {
+        return isoStandard;
+    }
+
+    public void setIsoStandard(boolean isoStandard) {
+        this.isoStandard = isoStandard;
+    }
+
+    /**
+     * @return Directory of the {@link BuildCache}, or null to transform every model
+     */
+    public String getCacheDir() {
+        return cacheDir;
+    }
+
+    public void setCacheDir(String cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * @return Days after their last use that entries of the {@link BuildCache} are deleted, 0 to keep them forever
+     */
+    public int getCacheMaxAgeDays() {
+        return cacheMaxAgeDays;
+    }
+
+    public void setCacheMaxAgeDays(int cacheMaxAgeDays) {
+        this.cacheMaxAgeDays = cacheMaxAgeDays;
+    }
+
+    /**
+     * @return true to start no further models after a model failed, false to transform every model regardless
+     */
+    public boolean isFailFast() {
+        return failFast;
+    }
+
+    public void setFailFast(boolean failFast) {
+        this.failFast = failFast;
+    }
+
+    /**
+     * @return JSON file the {@link BatchReport} is written to, or null for no report
+     */
+    public String getReportFile() {
+        return reportFile;
+    }
+
+    public void setReportFile(String reportFile) {
+        this.reportFile = reportFile;
+    }
+
+    /**
+     * @return Heap in bytes that the models in progress may use together, see {@link AdmissionControl}. 0 admits
+     * every model right away.
+     */
+    public long getHeapBudget() {
+        return heapBudget;
+    }
+
+    public void setHeapBudget(long heapBudget) {
+        this.heapBudget = heapBudget;
+    }
+
+    /**
+     * @return true to transform the models of all subdirectories too, their outputs mirror the input tree
+     */
+    public boolean isRecursive() {
+        return recursive;
+    }
+
+    public void setRecursive(boolean recursive) {
+        this.recursive = recursive;
+    }
+
+    /**
+     * @return Glob selecting the models by their path relative to the input directory
+     */
+    public String getGlob() {
+        return glob;
+    }
+
+    public void setGlob(String glob) {
+        this.glob = glob;
+    }
+}
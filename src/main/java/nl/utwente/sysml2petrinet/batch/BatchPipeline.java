@@ -0,0 +1,390 @@
+package nl.utwente.sysml2petrinet.batch;
+
+import nl.utwente.sysml2petrinet.SysML2PetriNet;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Batch transformation as a pipeline of three stages: parse, model to model transformation and export.
+ * The CPU-bound stages each run on a fixed number of platform threads, exports block on disk and run on virtual
+ * threads. Bounded queues between the stages keep a slow stage from piling up models in memory, so parsing the next
+ * models overlaps with writing the outputs of the previous ones.
+ * By default no further models are started after a model failed, the models already in the pipeline are completed.
+ * Otherwise failures are isolated to their model and the batch goes on; either way every model's status and time per
+ * stage are recorded in its {@link BatchItem} and, if configured, in a {@link BatchReport}. Errors such as running out
+ * of memory fail their model like exceptions do, but no further models are started after them. A model whose export
+ * left no outputs behind fails as well.
+ * If the items themselves fail, e.g. because the walk of the input tree broke off, no further models are started and
+ * the run fails once the models in the pipeline are completed.
+ * With a heap budget, models are only parsed once {@link AdmissionControl} admits them.
+ * With a {@link BuildCache}, models whose outputs are cached skip parsing and transformation and their outputs are
+ * copied by the export stage instead.
+ * With an {@link OutputArchive}, outputs are rendered in memory and written into the archive instead of a directory.
+ */
+public class BatchPipeline {
+    private static final Logger logger = LogManager.getLogger(BatchPipeline.class);
+    // Marks the end of the items in a queue, one per consuming thread
+    private static final BatchItem END = new BatchItem((File) null, null);
+
+    private final SysML2PetriNet sysML2PetriNet;
+    private final BatchOptions options;
+    private final OutputArchive archive;
+    private Consumer<BatchItem> listener;
+
+    /**
+     * @param sysML2PetriNet Transformation whose stages are run, it may be shared with other threads
+     * @param options        Batch options
+     */
+    public BatchPipeline(SysML2PetriNet sysML2PetriNet, BatchOptions options) {
+        this(sysML2PetriNet, options, null);
+    }
+
+    /**
+     * @param sysML2PetriNet Transformation whose stages are run, it may be shared with other threads
+     * @param options        Batch options
+     * @param archive        Archive the outputs are written to, the output directories of the items are directories
+     *                       in the archive then; null to write files
+     */
+    public BatchPipeline(SysML2PetriNet sysML2PetriNet, BatchOptions options, OutputArchive archive) {
+        this.sysML2PetriNet = sysML2PetriNet;
+        this.options = options;
+        this.archive = archive;
+    }
+
+    /**
+     * @param listener Called with every item once it is finished, succeeded or failed; from any of the pipeline's
+     *                 threads
+     */
+    public void setListener(Consumer<BatchItem> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Run the items through the pipeline. Items are only taken from the iterator when the first stage is ready for
+     * them, so the iterator may produce them lazily.
+     *
+     * @param items Models to transform
+     * @return The items in the order they were taken, holding their results
+     * @throws InterruptedException Interrupted while waiting for the pipeline
+     * @throws IOException          Build cache could not be opened, the next item could not be taken or report could not
+     *                              be written
+     */
+    public List<BatchItem> run(Iterator<BatchItem> items) throws InterruptedException, IOException {
+        BuildCache cache = null;
+        if (options.getCacheDir() != null && archive != null) {
+            // Cache entries are copies of output files, there are none
+            logger.warn("Build cache is not used when writing to an archive");
+        } else if (options.getCacheDir() != null) {
+            cache = new BuildCache(new File(options.getCacheDir()), sysML2PetriNet.getLibraryHash());
+            if (options.getCacheMaxAgeDays() > 0) {
+                cache.deleteUnused(TimeUnit.DAYS.toMillis(options.getCacheMaxAgeDays()));
+            }
+        }
+        return new Run(items, cache).execute();
+    }
+
+    /**
+     * State of a single run of the pipeline
+     */
+    private class Run {
+        private final Iterator<BatchItem> items;
+        private final BuildCache cache;
+        private final AdmissionControl admission = options.getHeapBudget() > 0 ? new AdmissionControl(options.getHeapBudget()) : null;
+        private final AtomicInteger cacheHits = new AtomicInteger();
+        private final List<BatchItem> taken = Collections.synchronizedList(new ArrayList<>());
+        private final int workers = Math.max(1, options.getWorkers());
+        private final BlockingQueue<BatchItem> parsed = new ArrayBlockingQueue<>(Math.max(1, options.getQueueCapacity()));
+        private final BlockingQueue<BatchItem> transformed = new ArrayBlockingQueue<>(Math.max(1, options.getQueueCapacity()));
+        private final AtomicInteger activeParsers = new AtomicInteger(workers);
+        private final AtomicInteger activeTransformers = new AtomicInteger(workers);
+        private volatile boolean stopped;
+        private volatile RuntimeException itemError;
+
+        private Run(Iterator<BatchItem> items, BuildCache cache) {
+            this.items = items;
+            this.cache = cache;
+        }
+
+        private List<BatchItem> execute() throws InterruptedException, IOException {
+            long start = System.currentTimeMillis();
+            ExecutorService cpu = Executors.newFixedThreadPool(2 * workers);
+            try (ExecutorService io = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < workers; i++) {
+                    cpu.execute(this::parseStage);
+                    cpu.execute(this::transformStage);
+                }
+                // Bounds the exports in progress, virtual threads themselves are unbounded
+                Semaphore exports = new Semaphore(Math.max(1, options.getQueueCapacity()));
+                BatchItem item;
+                while ((item = transformed.take()) != END) {
+                    if (item.isFailed()) {
+                        finished(item);
+                        continue;
+                    }
+                    exports.acquire();
+                    BatchItem exporting = item;
+                    io.execute(() -> {
+                        try {
+                            exportStage(exporting);
+                        } finally {
+                            finished(exporting);
+                            exports.release();
+                        }
+                    });
+                }
+            } finally {
+                cpu.shutdownNow();
+            }
+            long totalMillis = System.currentTimeMillis() - start;
+            List<BatchItem> result = new ArrayList<>(taken);
+            logger.info("Pipeline transformed {} files using {} workers in {} ms", result.size(), workers, totalMillis);
+            if (cache != null) {
+                logger.info("{} of {} files were restored from the build cache", cacheHits.get(), result.size());
+            }
+            if (options.getReportFile() != null) {
+                BatchReport report = new BatchReport(result, workers, totalMillis);
+                report.write(new File(options.getReportFile()));
+                logger.info("Wrote batch report to {}, {} of {} files failed", options.getReportFile(), report.getFailed(), result.size());
+            }
+            if (itemError != null) {
+                // The models after it are unknown, a batch missing them must not look complete
+                throw new IOException("Batch stopped after " + result.size() + " files, the next file could not be taken", itemError);
+            }
+            return result;
+        }
+
+        private BatchItem next() {
+            synchronized (items) {
+                if (stopped) {
+                    return null;
+                }
+                BatchItem item;
+                try {
+                    if (!items.hasNext()) {
+                        return null;
+                    }
+                    item = items.next();
+                } catch (RuntimeException e) {
+                    logger.error("Could not take the next file", e);
+                    itemError = e;
+                    stopped = true;
+                    return null;
+                }
+                taken.add(item);
+                return item;
+            }
+        }
+
+        private void parseStage() {
+            try {
+                BatchItem item;
+                while ((item = next()) != null) {
+                    if (item.isFailed()) {
+                        // Could not be read by the discovery
+                        fail(item, item.getError());
+                    }
+                    try {
+                        if (cache != null && !item.isFailed()) {
+                            if (!item.isInMemory()) {
+                                // Keyed and parsed from the same bytes, the file may change in between
+                                item.setContent(Files.readAllBytes(item.getInput().toPath()));
+                            }
+                            item.setCacheKey(cache.key(item.getInput().getName(), item.getContent(),
+                                    options.isDirectTransformation(), options.isIsoStandard()));
+                            item.setCached(cache.contains(item.getCacheKey()));
+                        }
+                    } catch (Exception e) {
+                        fail(item, e);
+                    }
+                    if (!item.isFailed() && !item.isCached()) {
+                        if (admission != null) {
+                            item.setReservedBytes(admission.admit(item.getInput().getPath(), item.getSize()));
+                        }
+                        parse(item);
+                    }
+                    item.releaseContent();
+                    parsed.put(item);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (activeParsers.decrementAndGet() == 0) {
+                    end(parsed, workers);
+                }
+            }
+        }
+
+        private void parse(BatchItem item) {
+            long start = System.currentTimeMillis();
+            try {
+                if (item.isInMemory()) {
+                    item.setRoot(sysML2PetriNet.parse(new String(item.getContent(), StandardCharsets.UTF_8), item.getInput().getPath()));
+                } else if (item.getContent() != null) {
+                    item.setRoot(sysML2PetriNet.parseFile(item.getInput().getAbsolutePath(), item.getContent()));
+                } else {
+                    item.setRoot(sysML2PetriNet.parse(item.getInput().getAbsolutePath()));
+                }
+                if (admission != null) {
+                    item.setReservedBytes(admission.adjust(item.getSize(), item.getRoot(), item.getReservedBytes()));
+                }
+            } catch (Throwable e) {
+                fail(item, e);
+                release(item);
+            } finally {
+                item.setParseMillis(System.currentTimeMillis() - start);
+            }
+        }
+
+        private void release(BatchItem item) {
+            if (admission != null) {
+                admission.release(item.getReservedBytes());
+                item.setReservedBytes(0);
+            }
+        }
+
+        private void transformStage() {
+            try {
+                BatchItem item;
+                while ((item = parsed.take()) != END) {
+                    if (!item.isFailed() && !item.isCached()) {
+                        transform(item);
+                    }
+                    transformed.put(item);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (activeTransformers.decrementAndGet() == 0) {
+                    end(transformed, 1);
+                }
+            }
+        }
+
+        private void transform(BatchItem item) {
+            long start = System.currentTimeMillis();
+            try {
+                item.setPetriNet(sysML2PetriNet.toPetriNet(item.getRoot()));
+            } catch (Throwable e) {
+                fail(item, e);
+                return;
+            } finally {
+                // The model is unloaded now
+                item.setRoot(null);
+                release(item);
+                item.setTransformMillis(System.currentTimeMillis() - start);
+            }
+            if (!options.isDirectTransformation()) {
+                start = System.currentTimeMillis();
+                try {
+                    item.setValidated(sysML2PetriNet.validate(item.getPetriNet()));
+                } catch (Throwable e) {
+                    fail(item, e);
+                } finally {
+                    item.setValidationMillis(System.currentTimeMillis() - start);
+                }
+            }
+        }
+
+        private void exportStage(BatchItem item) {
+            long start = System.currentTimeMillis();
+            try {
+                if (item.isCached()) {
+                    item.setOutputs(cache.restore(item.getCacheKey(), item.getOutputDir()));
+                } else if (archive != null) {
+                    item.setEntries(exportToArchive(item));
+                } else {
+                    item.setOutputs(sysML2PetriNet.export(item.getPetriNet(), item.getValidated(), item.getInput().getAbsolutePath(),
+                            item.getOutputXMI(), item.getOutputDir(), options.isDirectTransformation(), options.isIsoStandard()));
+                }
+            } catch (Throwable e) {
+                fail(item, e);
+                return;
+            } finally {
+                item.setValidated(null);
+                item.setExportMillis(System.currentTimeMillis() - start);
+            }
+            // A model only succeeded if its outputs are there, not merely because nothing recorded an error
+            boolean written = !item.getEntries().isEmpty()
+                    || (!item.getOutputs().isEmpty() && item.getOutputs().stream().allMatch(File::isFile));
+            if (!written) {
+                fail(item, new IOException("No outputs were written"));
+                return;
+            }
+            if (item.isCached()) {
+                cacheHits.incrementAndGet();
+            } else if (cache != null) {
+                try {
+                    cache.store(item.getCacheKey(), item.getOutputs());
+                } catch (IOException e) {
+                    // The outputs are written, only the next run misses the cache
+                    logger.warn("Could not cache the outputs of {}", item.getInput(), e);
+                }
+            }
+        }
+
+        private List<String> exportToArchive(BatchItem item) throws Exception {
+            List<String> entries = new ArrayList<>();
+            if (!options.isDirectTransformation()) {
+                ByteArrayOutputStream xmi = new ByteArrayOutputStream();
+                sysML2PetriNet.exportXMI(item.getValidated(), xmi);
+                entries.add(archive.write(item.getOutputXMI(), xmi.toByteArray()));
+            }
+            ByteArrayOutputStream pnml = new ByteArrayOutputStream();
+            String name = sysML2PetriNet.exportPNML(item.getPetriNet(), item.getValidated(), item.getInput().getPath(),
+                    options.isDirectTransformation(), options.isIsoStandard(), pnml);
+            entries.add(archive.write(item.getOutputDir() + name, pnml.toByteArray()));
+            return entries;
+        }
+
+        private void finished(BatchItem item) {
+            if (listener == null) {
+                return;
+            }
+            try {
+                listener.accept(item);
+            } catch (RuntimeException e) {
+                // The item itself is done, a listener cannot fail it anymore
+                logger.warn("Listener failed for {}", item.getInput(), e);
+            }
+        }
+
+        private void fail(BatchItem item, Throwable e) {
+            // An error is recorded on its model too, so the model is still released, passed on and reported; the
+            // worker survives it, but the JVM may be short of memory, so no further models are started
+            item.setError(e instanceof Exception ? (Exception) e : new Exception(e.toString(), e));
+            if (options.isFailFast() || e instanceof Error) {
+                stopped = true;
+            }
+            logger.error("Failed to transform {}", item.getInput(), e);
+        }
+
+        private void end(BlockingQueue<BatchItem> queue, int consumers) {
+            try {
+                for (int i = 0; i < consumers; i++) {
+                    queue.put(END);
+                }
+            } catch (InterruptedException e) {
+                // Only happens when the pipeline is shut down, nobody waits for the end anymore
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package nl.utwente.sysml2petrinet.batch;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JSON summary of a batch run: the status, Petri net size and time per stage of every model, and the throughput of
+ * the whole run
+ */
+public class BatchReport {
+    private final int workers;
+    private final long totalMillis;
+    private int files;
+    private int succeeded;
+    private int failed;
+    private int cached;
+    private double filesPerSecond;
+    private final List<Model> models = new ArrayList<>();
+
+    /**
+     * @param items       Items returned by {@link BatchPipeline#run}
+     * @param workers     Number of workers of each CPU-bound stage
+     * @param totalMillis Wall-clock time of the run
+     */
+    public BatchReport(List<BatchItem> items, int workers, long totalMillis) {
+        this(workers, totalMillis);
+        for (BatchItem item : items) {
+            add(new Model(item));
+        }
+    }
+
+    private BatchReport(int workers, long totalMillis) {
+        this.workers = workers;
+        this.totalMillis = totalMillis;
+    }
+
+    /**
+     * Merge the results of models transformed by several processes into one report
+     *
+     * @param models      Results of the models, see {@link Model#toJson()}
+     * @param workers     Number of workers of each CPU-bound stage, over all processes
+     * @param totalMillis Wall-clock time of the run
+     * @return The report
+     */
+    static BatchReport merge(List<Model> models, int workers, long totalMillis) {
+        BatchReport report = new BatchReport(workers, totalMillis);
+        for (Model model : models) {
+            report.add(model);
+        }
+        return report;
+    }
+
+    private void add(Model model) {
+        models.add(model);
+        files++;
+        switch (model.status) {
+            case FAILED -> failed++;
+            case CACHED -> cached++;
+            case OK -> succeeded++;
+        }
+        filesPerSecond = totalMillis > 0 ? files * 1000.0 / totalMillis : 0;
+    }
+
+    public int getFiles() {
+        return files;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * @param file File to write the report to
+     * @throws IOException IO errors
+     */
+    public void write(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(this, writer);
+        }
+    }
+
+    public enum Status {
+        OK, CACHED, FAILED
+    }
+
+    /**
+     * Result of one model
+     */
+    static class Model {
+        private final String file;
+        private final Status status;
+        private final String error;
+        private final Integer nodes;
+        private final Integer arcs;
+        private final long parseMillis;
+        private final long transformMillis;
+        private final long validationMillis;
+        private final long exportMillis;
+
+        Model(BatchItem item) {
+            this.file = item.getInput().getPath();
+            // The pipeline fails models whose outputs are missing, so the item's status is the model's status
+            if (item.isFailed()) {
+                this.status = Status.FAILED;
+                this.error = String.valueOf(item.getError().getMessage());
+            } else {
+                this.status = item.isCached() ? Status.CACHED : Status.OK;
+                this.error = null;
+            }
+            this.nodes = item.getNodeCount() >= 0 ? item.getNodeCount() : null;
+            this.arcs = item.getArcCount() >= 0 ? item.getArcCount() : null;
+            this.parseMillis = item.getParseMillis();
+            this.transformMillis = item.getTransformMillis();
+            this.validationMillis = item.getValidationMillis();
+            this.exportMillis = item.getExportMillis();
+        }
+
+        /**
+         * Result of a model that could not be transformed at all, e.g. because it crashed every process it ran in
+         *
+         * @param file  .sysml model
+         * @param error Reason of the failure
+         */
+        Model(String file, String error) {
+            this.file = file;
+            this.status = Status.FAILED;
+            this.error = error;
+            this.nodes = null;
+            this.arcs = null;
+            this.parseMillis = 0;
+            this.transformMillis = 0;
+            this.validationMillis = 0;
+            this.exportMillis = 0;
+        }
+
+        String toJson() {
+            return new Gson().toJson(this);
+        }
+
+        static Model fromJson(String json) {
+            return new Gson().fromJson(json, Model.class);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package nl.utwente.sysml2petrinet.batch;
+
+import nl.utwente.sysml2petrinet.SysML2PetriNet;
+import nl.utwente.sysml2petrinet.m2m.Transformer;
+import nl.utwente.sysml2petrinet.m2t.main.GeneratePetriNet;
+import nl.utwente.sysml2petrinet.m2t_direct.TransformerPNML;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Persistent cache of transformation outputs. An entry is keyed by the content of the input model, the library, the
+ * transformation options and the transformation code (its jar or classes and the Acceleo template), so an entry can
+ * only be found again if all of them are unchanged. Entries are directories holding copies of the output files; they
+ * are written under a temporary name and renamed when complete, so concurrent batches never see half-written entries.
+ * Restoring an entry marks it as used; {@link #deleteUnused(long)} bounds the cache by deleting the entries that were
+ * not used for a while, and {@link #clear()} empties it.
+ */
+public class BuildCache {
+    private static final Logger logger = LogManager.getLogger(BuildCache.class);
+    private static final String FORMAT_VERSION = "1";
+    private static final Class<?>[] TOOL_CLASSES = {SysML2PetriNet.class, Transformer.class, TransformerPNML.class, GeneratePetriNet.class};
+    private static final String[] TEMPLATES = {
+            GeneratePetriNet.MODULE_FILE_NAME + ".emtl", GeneratePetriNet.MODULE_FILE_NAME + ".mtl",
+            "generatePetriNet.emtl", "generatePetriNet.mtl"};
+    // Only these are ever deleted, so a cache directory shared with other data keeps that data
+    private static final Pattern PREFIX_NAME = Pattern.compile("[0-9a-f]{2}");
+    private static final Pattern ENTRY_NAME = Pattern.compile("[0-9a-f]{64}(\\.tmp\\d*)?");
+
+    private final File directory;
+    private final String libraryHash;
+    private final String toolVersion;
+
+    /**
+     * @param directory   Directory holding the cache entries
+     * @param libraryHash Hash of the SysML library the models are linked against
+     * @throws IOException Transformation classes could not be read
+     */
+    public BuildCache(File directory, String libraryHash) throws IOException {
+        this.directory = directory;
+        this.libraryHash = libraryHash;
+        this.toolVersion = computeToolVersion();
+    }
+
+    /**
+     * @param name                 File name of the model
+     * @param content              Content of the model, the same bytes that are parsed so a file changed meanwhile
+     *                             cannot be stored under the key of its old content
+     * @param directTransformation true for the direct transformation
+     * @param isoStandard          true for ISO/IEC 15909 PNML
+     * @return Key of the outputs of the model
+     * @throws IOException Hash not available
+     */
+    public String key(String name, byte[] content, boolean directTransformation, boolean isoStandard) throws IOException {
+        MessageDigest digest = newDigest();
+        digest.update(FORMAT_VERSION.getBytes(StandardCharsets.UTF_8));
+        digest.update(toolVersion.getBytes(StandardCharsets.UTF_8));
+        digest.update(libraryHash.getBytes(StandardCharsets.UTF_8));
+        digest.update((directTransformation + "," + isoStandard).getBytes(StandardCharsets.UTF_8));
+        // The name of the model names its PNML file
+        digest.update(name.getBytes(StandardCharsets.UTF_8));
+        digest.update(content);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public boolean contains(String key) {
+        return entry(key).isDirectory();
+    }
+
+    /**
+     * Copy the cached outputs into the output directory
+     *
+     * @param key       Key of the outputs
+     * @param outputDir Output directory
+     * @return The files written
+     * @throws IOException IO errors
+     */
+    public List<File> restore(String key, String outputDir) throws IOException {
+        File[] cached = entry(key).listFiles();
+        if (cached == null) {
+            throw new IOException("No cache entry " + key);
+        }
+        // Marks the entry as used, see deleteUnused
+        entry(key).setLastModified(System.currentTimeMillis());
+        Files.createDirectories(Path.of(outputDir));
+        List<File> restored = new ArrayList<>();
+        for (File file : cached) {
+            File target = new File(outputDir, file.getName());
+            Files.copy(file.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            restored.add(target);
+        }
+        logger.debug("Restored {} files from cache entry {}", restored.size(), key);
+        return restored;
+    }
+
+    /**
+     * Store the outputs of a model. If an entry with the key appeared meanwhile it is kept.
+     *
+     * @param key     Key of the outputs
+     * @param outputs Files written for the model, all in one directory
+     * @throws IOException IO errors
+     */
+    public void store(String key, List<File> outputs) throws IOException {
+        File entry = entry(key);
+        if (entry.isDirectory()) {
+            return;
+        }
+        Path staging = Files.createTempDirectory(Files.createDirectories(entry.getParentFile().toPath()), key + ".tmp");
+        try {
+            for (File output : outputs) {
+                Files.copy(output.toPath(), staging.resolve(output.getName()));
+            }
+            Files.move(staging, entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            if (entry.isDirectory()) {
+                // Another batch stored the same outputs first
+                return;
+            }
+            throw e;
+        } finally {
+            deleteRecursively(staging);
+        }
+    }
+
+    /**
+     * Delete the entries that were neither stored nor restored for the given time, and the staging directories
+     * of batches that crashed that long ago
+     *
+     * @param maxAgeMillis Time since the last use
+     * @return Number of entries deleted
+     */
+    public int deleteUnused(long maxAgeMillis) {
+        int deleted = delete(System.currentTimeMillis() - maxAgeMillis);
+        if (deleted > 0) {
+            logger.info("Deleted {} build cache entries unused for {} ms", deleted, maxAgeMillis);
+        }
+        return deleted;
+    }
+
+    /**
+     * Delete all entries. Batches running meanwhile may fail to store their outputs.
+     *
+     * @return Number of entries deleted
+     */
+    public int clear() {
+        return delete(Long.MAX_VALUE);
+    }
+
+    private int delete(long threshold) {
+        File[] prefixes = directory.listFiles(f -> f.isDirectory() && PREFIX_NAME.matcher(f.getName()).matches());
+        if (prefixes == null) {
+            return 0;
+        }
+        int deleted = 0;
+        for (File prefix : prefixes) {
+            File[] entries = prefix.listFiles(f -> f.isDirectory() && ENTRY_NAME.matcher(f.getName()).matches()
+                    && f.lastModified() < threshold);
+            if (entries == null) {
+                continue;
+            }
+            for (File entry : entries) {
+                try {
+                    deleteRecursively(entry.toPath());
+                    deleted++;
+                } catch (IOException e) {
+                    logger.warn("Could not delete build cache entry {}", entry, e);
+                }
+            }
+        }
+        return deleted;
+    }
+
+    private File entry(String key) {
+        return new File(new File(directory, key.substring(0, 2)), key);
+    }
+
+    /**
+     * Hash the code of the transformation, so a changed transformation never reuses outdated outputs: the content of
+     * the jars or class directories holding the transformation classes and the Acceleo template. Locations are not
+     * hashed, so copies of the same build share their entries.
+     */
+    private static String computeToolVersion() throws IOException {
+        MessageDigest digest = newDigest();
+        Set<Path> sources = new TreeSet<>();
+        for (Class<?> cls : TOOL_CLASSES) {
+            Path source = codeSource(cls);
+            if (source != null) {
+                sources.add(source);
+                continue;
+            }
+            try (InputStream in = cls.getResourceAsStream(cls.getSimpleName() + ".class")) {
+                if (in == null) {
+                    throw new IOException("Class file of " + cls.getName() + " not found");
+                }
+                digest.update(in.readAllBytes());
+            }
+        }
+        for (Path source : sources) {
+            if (Files.isDirectory(source)) {
+                hashDirectory(digest, source);
+            } else {
+                try (InputStream in = Files.newInputStream(source)) {
+                    in.transferTo(new DigestOutputStream(OutputStream.nullOutputStream(), digest));
+                }
+            }
+        }
+        // The template may be loaded from another location than the generator class
+        for (String template : TEMPLATES) {
+            try (InputStream in = GeneratePetriNet.class.getResourceAsStream(template)) {
+                if (in != null) {
+                    digest.update(template.getBytes(StandardCharsets.UTF_8));
+                    digest.update(in.readAllBytes());
+                }
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * @return The jar or class directory a class was loaded from, or null if it is unknown
+     */
+    private static Path codeSource(Class<?> cls) throws IOException {
+        CodeSource source = cls.getProtectionDomain().getCodeSource();
+        if (source == null || source.getLocation() == null || !"file".equals(source.getLocation().getProtocol())) {
+            return null;
+        }
+        try {
+            return Path.of(source.getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Hash the class files and templates in a class directory, other resources do not affect the outputs
+     */
+    private static void hashDirectory(MessageDigest digest, Path root) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk.filter(Files::isRegularFile)
+                    .filter(p -> p.toString().endsWith(".class") || p.toString().endsWith(".mtl") || p.toString().endsWith(".emtl"))
+                    .sorted()
+                    .toList();
+        }
+        for (Path file : files) {
+            digest.update(root.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+            digest.update(Files.readAllBytes(file));
+        }
+    }
+
+    private static MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(path)) {
+            for (Path p : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package nl.utwente.sysml2petrinet.batch;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Finds the models of a batch while the batch is running. A virtual thread walks the input tree and hands every
+ * matching file to the pipeline through a bounded queue, so the first models are transformed long before the walk of
+ * a large tree is finished. The output directory of a model mirrors its directory in the input tree.
+ * A file or directory that cannot be read is handed to the pipeline as a failed item; if the walk itself is aborted,
+ * {@link #checkWalk()} fails. A consumer interrupted while waiting for the next model gets an exception rather than
+ * an end that would make the batch look complete.
+ */
+public class ModelDiscovery implements Iterator<BatchItem>, AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(ModelDiscovery.class);
+    private static final int QUEUE_CAPACITY = 1024;
+    // Marks the end of the walk
+    private static final BatchItem END = new BatchItem((File) null, null);
+
+    private final Path inputRoot;
+    private final Path outputRoot;
+    private final PathMatcher matcher;
+    private final int maxDepth;
+    private final BlockingQueue<BatchItem> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread walker;
+    private volatile IOException error;
+    private BatchItem next;
+
+    /**
+     * Start walking the input tree
+     *
+     * @param inputDir  Directory containing the models
+     * @param outputDir Directory the output tree is created in
+     * @param glob      Glob the path of a model relative to the input directory has to match, e.g. <code>**.sysml</code>
+     * @param recursive true to include subdirectories
+     */
+    public ModelDiscovery(String inputDir, String outputDir, String glob, boolean recursive) {
+        this.inputRoot = Path.of(inputDir);
+        this.outputRoot = Path.of(outputDir);
+        this.matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        this.maxDepth = recursive ? Integer.MAX_VALUE : 1;
+        this.walker = Thread.ofVirtual().name("model-discovery").start(this::walk);
+    }
+
+    private void walk() {
+        long start = System.currentTimeMillis();
+        int[] found = {0};
+        try {
+            Files.walkFileTree(inputRoot, EnumSet.noneOf(FileVisitOption.class), maxDepth, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Path relative = inputRoot.relativize(file);
+                    if (attrs.isRegularFile() && matcher.matches(relative)) {
+                        if (!put(new BatchItem(file.toFile(), outputDir(relative)))) {
+                            return FileVisitResult.TERMINATE;
+                        }
+                        found[0]++;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    // The models below an unreadable directory are unknown, so it fails like a model does
+                    logger.warn("Could not read {}", file, e);
+                    BatchItem item = new BatchItem(file.toFile(), outputDir(inputRoot.relativize(file)));
+                    item.setError(e);
+                    return put(item) ? FileVisitResult.CONTINUE : FileVisitResult.TERMINATE;
+                }
+            });
+            logger.info("Found {} models in {} in {} ms", found[0], inputRoot, System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            logger.error("Failed to walk {}", inputRoot, e);
+            error = e;
+        } finally {
+            try {
+                queue.put(END);
+            } catch (InterruptedException e) {
+                // Closed, nobody reads the queue anymore
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private String outputDir(Path relative) {
+        return (relative.getParent() != null ? outputRoot.resolve(relative.getParent()) : outputRoot) + File.separator;
+    }
+
+    /**
+     * @return false if interrupted
+     */
+    private boolean put(BatchItem item) {
+        try {
+            queue.put(item);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * To be called once all models were taken
+     *
+     * @throws IOException The walk was aborted, so models may be missing
+     */
+    public void checkWalk() throws IOException {
+        if (error != null) {
+            throw new IOException("Failed to walk " + inputRoot, error);
+        }
+    }
+
+    /**
+     * Wait until the next model is found or the walk is finished
+     *
+     * @throws IllegalStateException Interrupted while waiting, the interrupt flag is kept
+     */
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the models in " + inputRoot, e);
+            }
+        }
+        if (next == END) {
+            // Keep the end for further calls
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public BatchItem next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        BatchItem item = next;
+        next = null;
+        return item;
+    }
+
+    /**
+     * Stop the walk if the batch ended before it
+     */
+    @Override
+    public void close() {
+        walker.interrupt();
+    }
+}
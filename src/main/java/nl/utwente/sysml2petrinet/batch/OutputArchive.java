@@ -0,0 +1,95 @@
+package nl.utwente.sysml2petrinet.batch;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Zip archive the outputs of a batch are written to. Exports render their outputs in memory and only the writing of
+ * the entries is serialised, so concurrent exports do not wait for each other's transformation.
+ */
+public class OutputArchive implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(OutputArchive.class);
+
+    private final File file;
+    private final ZipOutputStream zip;
+    private final Set<String> names = new HashSet<>();
+
+    /**
+     * @param file Archive to create, an existing archive is replaced
+     * @throws IOException Archive could not be created
+     */
+    public OutputArchive(File file) throws IOException {
+        this.file = file;
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        this.zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    }
+
+    /**
+     * Add an entry to the archive
+     *
+     * @param path    Path of the entry, with <code>/</code> or the platform separator
+     * @param content Content of the entry
+     * @return Name of the entry
+     * @throws IOException Path is unsafe, see {@link #entryName(String)}, or entry exists already or could not be
+     *                     written
+     */
+    public synchronized String write(String path, byte[] content) throws IOException {
+        String name = entryName(path);
+        if (!names.add(name)) {
+            throw new IOException("Duplicate entry " + name + " in " + file);
+        }
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content);
+        zip.closeEntry();
+        return name;
+    }
+
+    /**
+     * Normalise the path of an entry, rejecting paths that would resolve outside the directory the archive is
+     * extracted to (zip slip)
+     *
+     * @param path Path of an entry, with <code>/</code> or the platform separator
+     * @return Relative entry name without <code>.</code> segments and with <code>/</code> as separator
+     * @throws IOException Path is absolute or contains <code>..</code>
+     */
+    static String entryName(String path) throws IOException {
+        String name = path.replace(File.separatorChar, '/').replace('\\', '/');
+        if (name.startsWith("/") || name.matches("[A-Za-z]:.*")) {
+            throw new IOException("Absolute entry path " + path);
+        }
+        StringBuilder normalised = new StringBuilder();
+        for (String segment : name.split("/")) {
+            if (segment.equals("..")) {
+                throw new IOException("Entry path outside the archive root " + path);
+            }
+            if (!segment.isEmpty() && !segment.equals(".")) {
+                if (!normalised.isEmpty()) {
+                    normalised.append('/');
+                }
+                normalised.append(segment);
+            }
+        }
+        if (normalised.isEmpty()) {
+            throw new IOException("Empty entry path " + path);
+        }
+        return normalised.toString();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        zip.close();
+        logger.info("Wrote {} entries to {}", names.size(), file);
+    }
+}
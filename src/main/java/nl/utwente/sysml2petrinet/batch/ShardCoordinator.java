@@ -0,0 +1,163 @@
+package nl.utwente.sysml2petrinet.batch;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits a batch over several worker JVMs on the same host, as a single JVM is limited by garbage collection and
+ * contention on the shared library long before the machine is. The models are put into a {@link WorkQueue} which the
+ * {@link ShardWorker} processes claim them from; the results of all models are merged into one {@link BatchReport}.
+ * A worker that exits while it still holds claims has crashed: its models are put back into the queue and a new
+ * worker is started while models are pending. If workers keep exiting while models are pending without any model
+ * being finished, e.g. because the worker JVM cannot start, the batch is aborted instead of starting workers forever.
+ */
+public class ShardCoordinator {
+    private static final Logger logger = LogManager.getLogger(ShardCoordinator.class);
+    private static final long POLL_MILLIS = 200;
+    // Per process, consecutive worker exits without a finished model before the batch is aborted
+    private static final int MAX_IDLE_EXITS = 3;
+
+    private final int processes;
+    private List<String> jvmOptions = List.of();
+
+    /**
+     * @param processes Number of worker processes
+     */
+    public ShardCoordinator(int processes) {
+        this.processes = Math.max(1, processes);
+    }
+
+    /**
+     * @param jvmOptions Options of the worker JVMs, e.g. <code>-Xmx2g</code>
+     */
+    public void setJvmOptions(List<String> jvmOptions) {
+        this.jvmOptions = jvmOptions;
+    }
+
+    /**
+     * Transform all .sysml files of a directory. The workers of {@link BatchOptions#getWorkers()} are per process,
+     * and a failed model never stops the batch.
+     *
+     * @param fileDir   Directory containing the .sysml files
+     * @param outputDir Output directory, mirroring the input directory for recursive batches
+     * @param options   Batch options of every worker process
+     * @return The merged report, also written to {@link BatchOptions#getReportFile()} if set
+     * @throws Exception Queue could not be written, workers could not be started or kept exiting without progress
+     */
+    public BatchReport run(String fileDir, String outputDir, BatchOptions options) throws Exception {
+        long start = System.currentTimeMillis();
+        Path queueDir = Files.createTempDirectory("sysml2petrinet-queue");
+        WorkQueue queue = new WorkQueue(queueDir.toFile());
+        queue.writeOptions(options);
+        int models = 0;
+        // Enqueue everything first, a worker that finds the queue empty exits
+        try (ModelDiscovery discovery = new ModelDiscovery(fileDir, outputDir, options.getGlob(), options.isRecursive())) {
+            while (discovery.hasNext()) {
+                BatchItem item = discovery.next();
+                if (item.isFailed()) {
+                    queue.addFailed(item);
+                } else {
+                    queue.add(item.getInput(), item.getOutputDir());
+                }
+                models++;
+            }
+            discovery.checkWalk();
+        }
+        logger.info("Queued {} models in {}", models, queueDir);
+
+        Map<String, Process> live = new HashMap<>();
+        int started = 0;
+        int finished = queue.getResultCount();
+        int idleExits = 0;
+        try {
+            while (true) {
+                for (Iterator<Map.Entry<String, Process>> it = live.entrySet().iterator(); it.hasNext(); ) {
+                    Map.Entry<String, Process> worker = it.next();
+                    if (!worker.getValue().isAlive()) {
+                        it.remove();
+                        if (worker.getValue().exitValue() != 0) {
+                            logger.warn("Worker {} exited with {}", worker.getKey(), worker.getValue().exitValue());
+                        }
+                        queue.recover(worker.getKey());
+                        int results = queue.getResultCount();
+                        if (results > finished) {
+                            finished = results;
+                            idleExits = 0;
+                        } else if (queue.hasPending() && ++idleExits >= MAX_IDLE_EXITS * processes) {
+                            throw new IOException(idleExits + " workers exited without finishing a model, giving up on " + queueDir);
+                        }
+                    }
+                }
+                if (queue.hasPending()) {
+                    while (live.size() < processes) {
+                        String workerId = "worker-" + started++;
+                        live.put(workerId, startWorker(queueDir, workerId));
+                    }
+                } else if (live.isEmpty()) {
+                    break;
+                }
+                Thread.sleep(POLL_MILLIS);
+            }
+        } finally {
+            for (Process process : live.values()) {
+                process.destroy();
+            }
+        }
+
+        long totalMillis = System.currentTimeMillis() - start;
+        BatchReport report = BatchReport.merge(queue.getResults(), processes * Math.max(1, options.getWorkers()), totalMillis);
+        logger.info("{} worker processes transformed {} files in {} ms, {} failed", started, report.getFiles(), totalMillis, report.getFailed());
+        if (options.getReportFile() != null) {
+            report.write(new File(options.getReportFile()));
+        }
+        queue.delete();
+        return report;
+    }
+
+    private Process startWorker(Path queueDir, String workerId) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ShardWorker.class.getName());
+        command.add(queueDir.toString());
+        command.add(workerId);
+        logger.info("Starting worker {}", workerId);
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    /**
+     * @param args Input directory, output directory, number of worker processes and optionally the report file
+     */
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            logger.error("Usage: ShardCoordinator <inputDir> <outputDir> <processes> [reportFile]");
+            System.exit(2);
+        }
+        try {
+            BatchOptions options = new BatchOptions();
+            int processes = Integer.parseInt(args[2]);
+            // Share the cores between the processes
+            options.setWorkers(Math.max(1, options.getWorkers() / processes));
+            if (args.length > 3) {
+                options.setReportFile(args[3]);
+            }
+            BatchReport report = new ShardCoordinator(processes).run(args[0], args[1] + File.separator, options);
+            System.exit(report.getFailed() > 0 ? 1 : 0);
+        } catch (Exception e) {
+            logger.error("Sharded batch failed", e);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package nl.utwente.sysml2petrinet.batch;
+
+import nl.utwente.sysml2petrinet.SysML2PetriNet;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Worker process of a sharded batch, started by {@link ShardCoordinator}. Claims models from the {@link WorkQueue}
+ * one at a time and runs them through its own {@link BatchPipeline} until the queue is empty.
+ */
+public class ShardWorker {
+    private static final Logger logger = LogManager.getLogger(ShardWorker.class);
+
+    /**
+     * @param args Directory of the work queue and id of the worker
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            logger.error("Usage: ShardWorker <queueDir> <workerId>");
+            System.exit(2);
+        }
+        try {
+            run(new File(args[0]), args[1]);
+        } catch (Exception e) {
+            logger.error("Worker {} failed", args[1], e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param queueDir Directory of the work queue
+     * @param workerId Id of the worker
+     * @throws Exception Worker could not run
+     */
+    public static void run(File queueDir, String workerId) throws Exception {
+        WorkQueue queue = new WorkQueue(queueDir);
+        BatchOptions options = queue.readOptions();
+        // Failures are recorded per model and the coordinator writes the report
+        options.setFailFast(false);
+        options.setReportFile(null);
+        try (WorkQueue.Claims claims = queue.claims(workerId)) {
+            BatchPipeline pipeline = new BatchPipeline(new SysML2PetriNet(), options);
+            pipeline.setListener(item -> {
+                try {
+                    claims.complete(item);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            List<BatchItem> items = pipeline.run(claims);
+            logger.info("Worker {} transformed {} models", workerId, items.size());
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package nl.utwente.sysml2petrinet.batch;
+
+import com.google.gson.Gson;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Queue of models in a directory, shared by the processes of a sharded batch on one host. Every model is a small
+ * file in <code>pending/</code>; a worker claims it by renaming it into its own directory <code>claimed/&lt;id&gt;/</code>,
+ * which only one worker can do, and replaces it by a result in <code>results/</code> when the model is finished.
+ * A worker holds a lock on <code>workers/&lt;id&gt;.lock</code> while it runs, so the models claimed by a worker whose
+ * lock is free were abandoned by a crash and can be put back into the queue.
+ */
+public class WorkQueue {
+    private static final Logger logger = LogManager.getLogger(WorkQueue.class);
+    // A model that crashed this many processes is failed instead of being queued again
+    public static final int MAX_ATTEMPTS = 3;
+    private static final String INPUT = "input";
+    private static final String OUTPUT_DIR = "outputDir";
+    private static final String ATTEMPTS = "attempts";
+    private static final String OPTIONS_FILE = "options.json";
+
+    private final Path pending;
+    private final Path claimed;
+    private final Path results;
+    private final Path workers;
+    private int added;
+
+    /**
+     * @param directory Directory of the queue, created if needed
+     * @throws IOException Directory could not be created
+     */
+    public WorkQueue(File directory) throws IOException {
+        Path root = directory.toPath();
+        this.pending = Files.createDirectories(root.resolve("pending"));
+        this.claimed = Files.createDirectories(root.resolve("claimed"));
+        this.results = Files.createDirectories(root.resolve("results"));
+        this.workers = Files.createDirectories(root.resolve("workers"));
+    }
+
+    /**
+     * @param input     .sysml model
+     * @param outputDir Directory the outputs of the model are written to
+     * @throws IOException IO errors
+     */
+    public void add(File input, String outputDir) throws IOException {
+        Properties entry = new Properties();
+        entry.setProperty(INPUT, input.getAbsolutePath());
+        entry.setProperty(OUTPUT_DIR, outputDir);
+        entry.setProperty(ATTEMPTS, "0");
+        // Zero padded, so workers claim the models in the order they were added
+        write(entry, pending.resolve(String.format("%08d.item", added++)));
+    }
+
+    /**
+     * Record a model that failed before it could be queued, e.g. because it could not be read
+     *
+     * @param item Failed item
+     * @throws IOException IO errors
+     */
+    void addFailed(BatchItem item) throws IOException {
+        writeResult(results.resolve(String.format("%08d.item", added++)), new BatchReport.Model(item));
+    }
+
+    /**
+     * @param options Options the workers run their pipeline with
+     * @throws IOException IO errors
+     */
+    public void writeOptions(BatchOptions options) throws IOException {
+        Files.writeString(pending.resolveSibling(OPTIONS_FILE), new Gson().toJson(options), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return Options the workers run their pipeline with
+     * @throws IOException IO errors
+     */
+    public BatchOptions readOptions() throws IOException {
+        return new Gson().fromJson(Files.readString(pending.resolveSibling(OPTIONS_FILE), StandardCharsets.UTF_8), BatchOptions.class);
+    }
+
+    public boolean hasPending() throws IOException {
+        try (Stream<Path> files = Files.list(pending)) {
+            return files.findAny().isPresent();
+        }
+    }
+
+    /**
+     * @return true if no model is pending or claimed anymore
+     * @throws IOException IO errors
+     */
+    public boolean isFinished() throws IOException {
+        if (hasPending()) {
+            return false;
+        }
+        try (Stream<Path> dirs = Files.list(claimed)) {
+            for (Path dir : dirs.toList()) {
+                try (Stream<Path> files = Files.list(dir)) {
+                    if (files.findAny().isPresent()) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Put the models claimed by a worker back into the queue, if the worker is no longer running. A model that was
+     * claimed {@link #MAX_ATTEMPTS} times already is failed instead.
+     *
+     * @param workerId Id of the worker
+     * @return Number of models put back
+     * @throws IOException IO errors
+     */
+    public int recover(String workerId) throws IOException {
+        Path lockFile = workers.resolve(workerId + ".lock");
+        Path dir = claimed.resolve(workerId);
+        if (!Files.isDirectory(dir)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return 0;
+            }
+        } catch (OverlappingFileLockException e) {
+            // Held by a worker in this process
+            return 0;
+        }
+        int requeued = 0;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                Properties entry = read(file);
+                int attempts = Integer.parseInt(entry.getProperty(ATTEMPTS)) + 1;
+                if (attempts >= MAX_ATTEMPTS) {
+                    logger.error("{} crashed {} workers, giving up", entry.getProperty(INPUT), attempts);
+                    writeResult(file, new BatchReport.Model(entry.getProperty(INPUT), "Worker crashed " + attempts + " times"));
+                    Files.delete(file);
+                } else {
+                    entry.setProperty(ATTEMPTS, String.valueOf(attempts));
+                    write(entry, file);
+                    Files.move(file, pending.resolve(file.getFileName()), StandardCopyOption.ATOMIC_MOVE);
+                    requeued++;
+                }
+            }
+        }
+        Files.delete(dir);
+        Files.deleteIfExists(lockFile);
+        if (requeued > 0) {
+            logger.warn("Put {} models of worker {} back into the queue", requeued, workerId);
+        }
+        return requeued;
+    }
+
+    /**
+     * @return Number of finished models
+     * @throws IOException IO errors
+     */
+    public int getResultCount() throws IOException {
+        try (Stream<Path> files = Files.list(results)) {
+            return (int) files.filter(f -> f.toString().endsWith(".json")).count();
+        }
+    }
+
+    /**
+     * @return Results of the finished models
+     * @throws IOException IO errors
+     */
+    List<BatchReport.Model> getResults() throws IOException {
+        List<BatchReport.Model> models = new ArrayList<>();
+        try (Stream<Path> files = Files.list(results)) {
+            for (Path file : files.filter(f -> f.toString().endsWith(".json")).sorted().toList()) {
+                models.add(BatchReport.Model.fromJson(Files.readString(file, StandardCharsets.UTF_8)));
+            }
+        }
+        return models;
+    }
+
+    /**
+     * Register a worker, to be called once in the worker's process
+     *
+     * @param workerId Id of the worker, unique within the queue
+     * @return Claims of the worker, the worker counts as running until they are closed
+     * @throws IOException Worker could not be registered
+     */
+    public Claims claims(String workerId) throws IOException {
+        return new Claims(workerId);
+    }
+
+    /**
+     * Remove the queue directory
+     *
+     * @throws IOException IO errors
+     */
+    public void delete() throws IOException {
+        try (Stream<Path> walk = Files.walk(pending.getParent())) {
+            for (Path p : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    private void writeResult(Path claim, BatchReport.Model model) throws IOException {
+        String name = claim.getFileName().toString().replace(".item", ".json");
+        Path staging = results.resolve(name + ".tmp");
+        Files.writeString(staging, model.toJson(), StandardCharsets.UTF_8);
+        Files.move(staging, results.resolve(name), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static Properties read(Path file) throws IOException {
+        Properties entry = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            entry.load(reader);
+        }
+        return entry;
+    }
+
+    private static void write(Properties entry, Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            entry.store(writer, null);
+        }
+    }
+
+    /**
+     * The models claimed by one worker. Claims lazily, one model each time the pipeline takes the next item, so the
+     * models spread over the workers by their speed. The pending models are listed once and claimed from that listing
+     * until it runs out, instead of listing the whole queue for every model. Once a model could not be claimed or its
+     * result could not be recorded, no further models are claimed and closing the claims fails, so the worker exits
+     * with an error.
+     */
+    public class Claims implements Iterator<BatchItem>, AutoCloseable {
+        private final String workerId;
+        private final Path dir;
+        private final FileChannel lockChannel;
+        private final Map<BatchItem, Path> claims = new ConcurrentHashMap<>();
+        // Sorted listing of pending/, models in it may have been claimed by other workers meanwhile
+        private final Deque<Path> candidates = new ArrayDeque<>();
+        private volatile IOException error;
+        private BatchItem next;
+
+        private Claims(String workerId) throws IOException {
+            this.workerId = workerId;
+            this.dir = Files.createDirectories(claimed.resolve(workerId));
+            this.lockChannel = FileChannel.open(workers.resolve(workerId + ".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if (lockChannel.tryLock() == null) {
+                lockChannel.close();
+                throw new IOException("Worker " + workerId + " is running already");
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && error == null) {
+                try {
+                    next = claim();
+                } catch (IOException e) {
+                    logger.error("Worker {} could not claim a model", workerId, e);
+                    error = e;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public BatchItem next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            BatchItem item = next;
+            next = null;
+            return item;
+        }
+
+        private BatchItem claim() throws IOException {
+            while (true) {
+                if (candidates.isEmpty()) {
+                    try (Stream<Path> files = Files.list(pending)) {
+                        files.sorted().forEach(candidates::add);
+                    }
+                    if (candidates.isEmpty()) {
+                        return null;
+                    }
+                }
+                Path candidate = candidates.poll();
+                Path target = dir.resolve(candidate.getFileName());
+                try {
+                    Files.move(candidate, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (NoSuchFileException e) {
+                    // Claimed by another worker first
+                    continue;
+                }
+                Properties entry = read(target);
+                BatchItem item = new BatchItem(new File(entry.getProperty(INPUT)), entry.getProperty(OUTPUT_DIR));
+                claims.put(item, target);
+                return item;
+            }
+        }
+
+        /**
+         * Record the result of a finished model and release its claim
+         *
+         * @param item Item returned by this iterator
+         * @throws IOException Result could not be written; the worker stops claiming models and the model stays claimed,
+         *                     so it is transformed again by another worker once this one exited
+         */
+        public void complete(BatchItem item) throws IOException {
+            Path claim = claims.remove(item);
+            try {
+                writeResult(claim, new BatchReport.Model(item));
+                Files.delete(claim);
+            } catch (IOException e) {
+                logger.error("Worker {} could not record the result of {}", workerId, item.getInput(), e);
+                error = e;
+                throw e;
+            }
+        }
+
+        /**
+         * Unregister the worker. Models still claimed are recovered by {@link #recover(String)}.
+         *
+         * @throws IOException The worker could not claim a model or record a result, see {@link #complete(BatchItem)}
+         */
+        @Override
+        public void close() throws IOException {
+            lockChannel.close();
+            if (error != null) {
+                throw new IOException("Worker " + workerId + " stopped after a queue error", error);
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package nl.utwente.sysml2petrinet.library;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.impl.URIHandlerImpl;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * SysML library packaged as a single zip archive. The first entry is a table of contents listing all library files,
+ * so the library is known without walking directories. An archive on disk is read through a zip file system, an
+ * archive inside a jar is read into memory with one sequential pass.
+ * Library files are addressed with <code>sysml-library:/</code> URIs, which this handler serves to EMF.
+ * Closing the archive releases the zip file system; it cannot be read afterwards.
+ */
+public class LibraryArchive extends URIHandlerImpl implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(LibraryArchive.class);
+    public static final String SCHEME = "sysml-library";
+    public static final String CLASSPATH_PREFIX = "classpath:";
+    public static final String TOC_ENTRY = "library.toc";
+
+    private final String location;
+    private final List<String> entries;
+    private final FileSystem fileSystem;
+    private final Map<String, byte[]> content;
+
+    private LibraryArchive(String location, List<String> entries, FileSystem fileSystem, Map<String, byte[]> content) {
+        this.location = location;
+        this.entries = entries;
+        this.fileSystem = fileSystem;
+        this.content = content;
+    }
+
+    /**
+     * @param location Library location given to the processor
+     * @return true if the location refers to an archive rather than a directory
+     */
+    public static boolean isArchive(String location) {
+        return location.startsWith(CLASSPATH_PREFIX) || location.endsWith(".zip");
+    }
+
+    /**
+     * Open a library archive
+     *
+     * @param location Path of a zip file, or <code>classpath:</code> followed by the resource name of the archive
+     * @return The opened archive
+     * @throws IOException Archive not found or unreadable
+     */
+    public static LibraryArchive open(String location) throws IOException {
+        if (!location.startsWith(CLASSPATH_PREFIX)) {
+            return openFile(location, Path.of(location));
+        }
+        String name = location.substring(CLASSPATH_PREFIX.length());
+        URL url = LibraryArchive.class.getResource(name.startsWith("/") ? name : "/" + name);
+        if (url == null) {
+            throw new FileNotFoundException("Library archive not on classpath: " + name);
+        }
+        if ("file".equals(url.getProtocol())) {
+            try {
+                return openFile(location, Path.of(url.toURI()));
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
+            }
+        }
+        // Nested in a jar, a zip file system cannot be mounted
+        Map<String, byte[]> content = new HashMap<>();
+        try (ZipInputStream in = new ZipInputStream(new BufferedInputStream(url.openStream()))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                if (!entry.isDirectory()) {
+                    content.put(entry.getName(), in.readAllBytes());
+                }
+            }
+        }
+        byte[] toc = content.get(TOC_ENTRY);
+        if (toc == null) {
+            throw new IOException("Library archive has no " + TOC_ENTRY + ": " + location);
+        }
+        List<String> entries = new String(toc, StandardCharsets.UTF_8).lines().filter(l -> !l.isBlank()).toList();
+        logger.info("Read {} library files from {}", entries.size(), url);
+        return new LibraryArchive(location, entries, null, content);
+    }
+
+    private static LibraryArchive openFile(String location, Path zip) throws IOException {
+        FileSystem fileSystem = FileSystems.newFileSystem(zip);
+        List<String> entries = Files.readAllLines(fileSystem.getPath(TOC_ENTRY), StandardCharsets.UTF_8)
+                .stream().filter(l -> !l.isBlank()).toList();
+        logger.info("Opened library archive {} with {} files", zip, entries.size());
+        return new LibraryArchive(location, entries, fileSystem, null);
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    /**
+     * @return Relative paths of all library files, in table of contents order
+     */
+    public List<String> getEntries() {
+        return entries;
+    }
+
+    public byte[] read(String entry) throws IOException {
+        if (content != null) {
+            byte[] bytes = content.get(entry);
+            if (bytes == null) {
+                throw new FileNotFoundException(entry);
+            }
+            return bytes;
+        }
+        return Files.readAllBytes(fileSystem.getPath(entry));
+    }
+
+    /**
+     * @param entry Relative path of a library file
+     * @return URI under which the file is loaded
+     */
+    public URI getURI(String entry) {
+        URI uri = URI.createURI(SCHEME + ":/");
+        for (String segment : entry.split("/")) {
+            uri = uri.appendSegment(URI.encodeSegment(segment, false));
+        }
+        return uri;
+    }
+
+    private static String getEntry(URI uri) {
+        StringJoiner entry = new StringJoiner("/");
+        for (String segment : uri.segments()) {
+            entry.add(URI.decode(segment));
+        }
+        return entry.toString();
+    }
+
+    @Override
+    public boolean canHandle(URI uri) {
+        return SCHEME.equals(uri.scheme());
+    }
+
+    @Override
+    public InputStream createInputStream(URI uri, Map<?, ?> options) throws IOException {
+        return new ByteArrayInputStream(read(getEntry(uri)));
+    }
+
+    @Override
+    public boolean exists(URI uri, Map<?, ?> options) {
+        return entries.contains(getEntry(uri));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fileSystem != null) {
+            fileSystem.close();
+        }
+    }
+
+    /**
+     * Package a library directory into an archive, writing the table of contents first
+     *
+     * @param libraryDir Directory of the SysML library
+     * @param zip        Archive to create
+     * @throws IOException IO errors
+     */
+    public static void create(Path libraryDir, Path zip) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(libraryDir)) {
+            files = walk.filter(Files::isRegularFile)
+                    .filter(p -> p.toString().endsWith(".sysml") || p.toString().endsWith(".kerml"))
+                    .sorted().toList();
+        }
+        List<String> entries = new ArrayList<>();
+        for (Path file : files) {
+            entries.add(libraryDir.relativize(file).toString().replace(File.separatorChar, '/'));
+        }
+        if (zip.getParent() != null) {
+            Files.createDirectories(zip.getParent());
+        }
+        try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(zip)))) {
+            out.putNextEntry(new ZipEntry(TOC_ENTRY));
+            out.write(String.join("\n", entries).getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+            for (int i = 0; i < files.size(); i++) {
+                out.putNextEntry(new ZipEntry(entries.get(i)));
+                Files.copy(files.get(i), out);
+                out.closeEntry();
+            }
+        }
+        logger.info("Packaged {} library files into {}", entries.size(), zip);
+    }
+
+    /**
+     * Used by the build to package the library
+     *
+     * @param args Library directory and archive to create
+     * @throws IOException IO errors
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Arguments not valid : {libraryDir, archive}.");
+            return;
+        }
+        create(Path.of(args[0]), Path.of(args[1]));
+    }
+}
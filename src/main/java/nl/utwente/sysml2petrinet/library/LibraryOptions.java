@@ -0,0 +1,78 @@
+package nl.utwente.sysml2petrinet.library;
+
+/**
+ * Options controlling how {@link nl.utwente.sysml2petrinet.SysMLProcessor} loads the SysML library
+ */
+public class LibraryOptions {
+    private String snapshotDir;
+    private boolean lazy;
+    private int parallelism;
+    private boolean shared;
+    private boolean discardNodeModels;
+
+    public LibraryOptions() {
+        this.snapshotDir = null;
+        this.lazy = false;
+        this.parallelism = 1;
+        this.shared = true;
+        this.discardNodeModels = false;
+    }
+
+    /**
+     * @return Directory holding library snapshots, or null if snapshots are disabled
+     */
+    public String getSnapshotDir() {
+        return snapshotDir;
+    }
+
+    public void setSnapshotDir(String snapshotDir) {
+        this.snapshotDir = snapshotDir;
+    }
+
+    /**
+     * @return true if library files are only loaded once a processed model needs them. The snapshot is not used in
+     * this mode, as it always holds the complete library.
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    /**
+     * @return Number of library files parsed concurrently, 1 parses them sequentially
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return true if the library is shared with all processors of the same library directory and loading mode,
+     * false to load a private copy
+     */
+    public boolean isShared() {
+        return shared;
+    }
+
+    public void setShared(boolean shared) {
+        this.shared = shared;
+    }
+
+    /**
+     * @return true if node models and other editor-only data of library resources are dropped once they are
+     * linked. Libraries loaded from a snapshot never have node models.
+     */
+    public boolean isDiscardNodeModels() {
+        return discardNodeModels;
+    }
+
+    public void setDiscardNodeModels(boolean discardNodeModels) {
+        this.discardNodeModels = discardNodeModels;
+    }
+}
@@ -0,0 +1,186 @@
+package nl.utwente.sysml2petrinet.library;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cheap index from top-level package name to the library file that declares it, built without parsing.
+ * The index is read from the <code>.meta.json</code> files shipped with the library and completed by scanning the
+ * package declaration of any file those do not (correctly) list. Dependencies between library files are found by
+ * scanning for imports and qualified names, so the files a model needs can be loaded on demand.
+ */
+public class LibraryPackageIndex {
+    private static final Logger logger = LogManager.getLogger(LibraryPackageIndex.class);
+    private static final String META_FILE = ".meta.json";
+    private static final Pattern PACKAGE_DECLARATION = Pattern.compile(
+            "^\\s*(?:standard\\s+)?(?:library\\s+)?package\\s+('[^']+'|\\w+)", Pattern.MULTILINE);
+    private static final Pattern QUALIFIED_REFERENCE = Pattern.compile("('[^']+'|[A-Za-z_]\\w*)\\s*::");
+    private static final Pattern IMPORT = Pattern.compile("\\bimport\\s+(?:all\\s+)?('[^']+'|[A-Za-z_]\\w*)");
+
+    /**
+     * Packages that the SysML semantics reference implicitly (e.g. as default supertypes of actions, successions
+     * and attributes), so they are needed even when a model imports nothing.
+     */
+    public static final List<String> IMPLICIT_PACKAGES = List.of(
+            "Base", "Links", "Occurrences", "Objects", "Performances", "ControlPerformances", "Transfers",
+            "Actions", "Attributes", "Items", "Parts", "Calculations", "Constraints", "States");
+
+    private final Map<String, File> packageToFile = new HashMap<>();
+    private final Map<File, Set<File>> dependencies = new HashMap<>();
+
+    /**
+     * @param libraryDir Directory of the SysML library
+     * @throws IOException Library could not be read
+     */
+    public LibraryPackageIndex(File libraryDir) throws IOException {
+        indexDirectory(libraryDir);
+        logger.info("Indexed {} library packages", packageToFile.size());
+    }
+
+    public Set<String> getPackageNames() {
+        return Collections.unmodifiableSet(packageToFile.keySet());
+    }
+
+    public File getFile(String packageName) {
+        return packageToFile.get(packageName);
+    }
+
+    /**
+     * Find all library files needed by a model, i.e. the files declaring the packages it references, the implicit
+     * packages, and transitively everything those files reference
+     *
+     * @param model .sysml model
+     * @return Library files in dependency discovery order
+     * @throws IOException Model or library could not be read
+     */
+    public Set<File> resolve(File model) throws IOException {
+        return resolve(Files.readString(model.toPath(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param modelText Content of a .sysml model
+     * @return Library files the model needs, see {@link #resolve(File)}
+     * @throws IOException Library file could not be read
+     */
+    public Set<File> resolve(String modelText) throws IOException {
+        Set<File> result = new LinkedHashSet<>();
+        Deque<File> pending = new ArrayDeque<>();
+        List<String> roots = new ArrayList<>(IMPLICIT_PACKAGES);
+        roots.addAll(referencedPackages(modelText));
+        for (String name : roots) {
+            File file = packageToFile.get(name);
+            if (file != null && result.add(file)) {
+                pending.add(file);
+            }
+        }
+        while (!pending.isEmpty()) {
+            for (File dependency : dependenciesOf(pending.poll())) {
+                if (result.add(dependency)) {
+                    pending.add(dependency);
+                }
+            }
+        }
+        return result;
+    }
+
+    private synchronized Set<File> dependenciesOf(File libraryFile) throws IOException {
+        Set<File> deps = dependencies.get(libraryFile);
+        if (deps == null) {
+            deps = new HashSet<>();
+            for (String name : referencedPackages(Files.readString(libraryFile.toPath(), StandardCharsets.UTF_8))) {
+                File file = packageToFile.get(name);
+                if (file != null && !file.equals(libraryFile)) {
+                    deps.add(file);
+                }
+            }
+            dependencies.put(libraryFile, deps);
+        }
+        return deps;
+    }
+
+    /**
+     * Names used as an import target or as the first segment of a qualified name. This over-approximates the
+     * referenced packages, which only costs loading a file too many.
+     */
+    private Set<String> referencedPackages(String text) {
+        Set<String> names = new HashSet<>();
+        for (Pattern pattern : List.of(IMPORT, QUALIFIED_REFERENCE)) {
+            Matcher matcher = pattern.matcher(text);
+            while (matcher.find()) {
+                String name = unquote(matcher.group(1));
+                if (packageToFile.containsKey(name)) {
+                    names.add(name);
+                }
+            }
+        }
+        return names;
+    }
+
+    private void indexDirectory(File dir) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Set<File> listed = readMetaIndex(dir);
+        for (File file : files) {
+            if (file.isDirectory()) {
+                indexDirectory(file);
+            } else if (isLibraryFile(file) && !listed.contains(file)) {
+                Matcher matcher = PACKAGE_DECLARATION.matcher(Files.readString(file.toPath(), StandardCharsets.UTF_8));
+                if (matcher.find()) {
+                    packageToFile.put(unquote(matcher.group(1)), file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the package index of a library directory, skipping entries that point to missing files
+     *
+     * @return Files covered by the index
+     */
+    private Set<File> readMetaIndex(File dir) {
+        Set<File> listed = new HashSet<>();
+        File meta = new File(dir, META_FILE);
+        if (!meta.isFile()) {
+            return listed;
+        }
+        try (Reader reader = Files.newBufferedReader(meta.toPath(), StandardCharsets.UTF_8)) {
+            JsonObject index = new Gson().fromJson(reader, JsonObject.class).getAsJsonObject("index");
+            if (index != null) {
+                for (String name : index.keySet()) {
+                    File file = new File(dir, index.get(name).getAsString());
+                    if (file.isFile()) {
+                        packageToFile.put(name, file);
+                        listed.add(file);
+                    } else {
+                        logger.debug("{} lists missing file {} for package {}", meta, file.getName(), name);
+                    }
+                }
+            }
+        } catch (IOException | JsonParseException | IllegalStateException e) {
+            logger.warn("Could not read {}, scanning files instead", meta, e);
+        }
+        return listed;
+    }
+
+    private static boolean isLibraryFile(File file) {
+        return file.getName().endsWith(".sysml") || file.getName().endsWith(".kerml");
+    }
+
+    private static String unquote(String name) {
+        return name.startsWith("'") ? name.substring(1, name.length() - 1) : name;
+    }
+}
@@ -0,0 +1,398 @@
+package nl.utwente.sysml2petrinet.library;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.BinaryResourceImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.xtext.resource.IResourceDescription;
+import org.eclipse.xtext.resource.XtextResource;
+import org.eclipse.xtext.resource.impl.ResourceDescriptionsData;
+import org.eclipse.xtext.resource.persistence.SerializableResourceDescription;
+import org.omg.kerml.xtext.KerMLStandaloneSetup;
+import org.omg.sysml.lang.sysml.SysMLPackage;
+import org.omg.sysml.xtext.SysMLStandaloneSetup;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * On-disk snapshot of the resolved SysML library, stored as one EMF binary resource per library resource together
+ * with the Xtext index of the library (the exported names of every resource and the objects they refer to).
+ * A snapshot lives in a directory named after a hash of the library tree and the toolchain jars, so any change
+ * to either simply produces a new snapshot instead of loading a stale one.
+ */
+public class LibrarySnapshot {
+    private static final Logger logger = LogManager.getLogger(LibrarySnapshot.class);
+    private static final String FORMAT_VERSION = "2";
+    private static final String INDEX_FILE = "index.bin";
+    private static final String MANIFEST_FILE = "manifest.json";
+    private static final String STAGING_SUFFIX = ".tmp";
+    // Only these are ever deleted, so a snapshot directory shared with other data keeps that data
+    private static final Pattern SNAPSHOT_NAME = Pattern.compile("[0-9a-f]{64}");
+    private static final Pattern STAGING_NAME = Pattern.compile("[0-9a-f]{64}\\.[0-9a-f-]{36}\\.tmp");
+    private static final int MAX_INDEX_RESOURCES = 100_000;
+    // index.bin lies in a user-writable directory, only the classes of a serialised Xtext index are accepted
+    private static final ObjectInputFilter INDEX_FILTER = ObjectInputFilter.Config.createFilter(
+            "maxdepth=32;maxarray=1000000;maxrefs=50000000;maxbytes=1073741824;"
+                    + "org.eclipse.xtext.resource.persistence.*;org.eclipse.xtext.naming.QualifiedName;"
+                    + "org.eclipse.emf.common.util.URI;org.eclipse.emf.common.util.URI$*;"
+                    + "java.util.ArrayList;java.util.Arrays$ArrayList;java.util.Collections$*;java.util.HashMap;"
+                    + "java.util.LinkedHashMap;java.util.HashSet;java.lang.*;!*");
+    // Another process may still be reading a snapshot it found before a newer one was saved
+    private static final long STALE_AFTER_MILLIS = 24L * 60 * 60 * 1000;
+    private static final Class<?>[] TOOLCHAIN_CLASSES = {
+            SysMLStandaloneSetup.class, KerMLStandaloneSetup.class, SysMLPackage.class, XtextResource.class, EObject.class
+    };
+
+    private final File snapshotRoot;
+    private final File directory;
+    private final String hash;
+
+    /**
+     * @param libraryDir   Directory of the SysML library
+     * @param snapshotRoot Directory in which snapshots are kept
+     * @throws IOException Library could not be read
+     */
+    public LibrarySnapshot(File libraryDir, File snapshotRoot) throws IOException {
+        this(computeHash(libraryDir), snapshotRoot);
+    }
+
+    /**
+     * @param archive      Packaged SysML library
+     * @param snapshotRoot Directory in which snapshots are kept
+     * @throws IOException Library could not be read
+     */
+    public LibrarySnapshot(LibraryArchive archive, File snapshotRoot) throws IOException {
+        this(computeHash(archive), snapshotRoot);
+    }
+
+    private LibrarySnapshot(String hash, File snapshotRoot) {
+        this.snapshotRoot = snapshotRoot;
+        this.hash = hash;
+        this.directory = new File(snapshotRoot, hash);
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public boolean exists() {
+        return new File(directory, MANIFEST_FILE).isFile();
+    }
+
+    /**
+     * Load all snapshotted library resources into the resource set
+     *
+     * @param resourceSet Resource set to load into
+     * @return true if the snapshot was loaded, false if it is missing or unreadable
+     */
+    public boolean load(ResourceSet resourceSet) {
+        if (!exists()) {
+            return false;
+        }
+        List<Resource> loaded = new ArrayList<>();
+        try (Reader reader = new InputStreamReader(new FileInputStream(new File(directory, MANIFEST_FILE)), StandardCharsets.UTF_8)) {
+            Manifest manifest = new Gson().fromJson(reader, Manifest.class);
+            for (Manifest.Entry entry : manifest.resources) {
+                Resource resource = new BinaryResourceImpl(URI.createURI(entry.uri));
+                resourceSet.getResources().add(resource);
+                loaded.add(resource);
+                try (InputStream in = new BufferedInputStream(new FileInputStream(new File(directory, entry.file)))) {
+                    resource.load(in, Collections.emptyMap());
+                }
+            }
+            logger.info("Loaded {} library resources from snapshot {}", loaded.size(), hash);
+            // Mark the snapshot as in use, so other processes do not delete it as stale
+            directory.setLastModified(System.currentTimeMillis());
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Library snapshot {} is unreadable, it will be rebuilt", directory, e);
+            resourceSet.getResources().removeAll(loaded);
+            discard();
+            return false;
+        }
+    }
+
+    /**
+     * Remove an unreadable snapshot, so {@link #save(ResourceSet)} can publish a new one in its place. It is renamed to
+     * a staging name first, a process still reading it keeps its open files.
+     */
+    private void discard() {
+        File discarded = new File(snapshotRoot, hash + "." + UUID.randomUUID() + STAGING_SUFFIX);
+        try {
+            Files.move(directory.toPath(), discarded.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            deleteRecursively(discarded.toPath());
+        } catch (IOException e) {
+            // Discarded by another process meanwhile, or left behind and deleted as stale later
+            logger.warn("Could not remove unreadable library snapshot {}", directory, e);
+        }
+    }
+
+    /**
+     * Read the Xtext index stored with the snapshot, so the global scope does not have to be computed again.
+     * Deserialisation is restricted to the classes of an Xtext index and bounded in depth and size, anything else
+     * makes the index unreadable.
+     *
+     * @return Descriptions of all snapshotted resources, or an empty list if the snapshot has no readable index
+     */
+    public List<IResourceDescription> loadIndex() {
+        File file = new File(directory, INDEX_FILE);
+        if (!file.isFile()) {
+            return Collections.emptyList();
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            in.setObjectInputFilter(INDEX_FILTER);
+            int count = in.readInt();
+            if (count < 0 || count > MAX_INDEX_RESOURCES) {
+                throw new InvalidObjectException("Invalid number of resources " + count);
+            }
+            List<IResourceDescription> descriptions = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                descriptions.add((IResourceDescription) in.readObject());
+            }
+            logger.info("Loaded index of {} library resources from snapshot {}", count, hash);
+            return descriptions;
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            logger.warn("Index of library snapshot {} is unreadable, it will be recomputed", directory, e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Resolve all proxies in the resource set and write every resource to a new snapshot
+     *
+     * @param resourceSet Resource set holding the parsed library
+     * @throws IOException IO errors
+     */
+    public void save(ResourceSet resourceSet) throws IOException {
+        save(resourceSet, null);
+    }
+
+    /**
+     * Resolve all proxies in the resource set and write every resource and the library index to a new snapshot
+     *
+     * @param resourceSet  Resource set holding the parsed library
+     * @param descriptions Index of the library, may be null
+     * @throws IOException IO errors
+     */
+    public void save(ResourceSet resourceSet, ResourceDescriptionsData descriptions) throws IOException {
+        EcoreUtil.resolveAll(resourceSet);
+        Files.createDirectories(snapshotRoot.toPath());
+        // Unique per process, concurrent processes may be saving the same snapshot
+        File staging = new File(snapshotRoot, hash + "." + UUID.randomUUID() + STAGING_SUFFIX);
+        if (!staging.mkdirs()) {
+            throw new IOException("Could not create " + staging);
+        }
+        try {
+            writeSnapshot(staging, resourceSet, descriptions);
+            try {
+                Files.move(staging.toPath(), directory.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                if (!exists()) {
+                    throw e;
+                }
+                logger.info("Snapshot {} was saved by another process", hash);
+                return;
+            }
+        } finally {
+            deleteRecursively(staging.toPath());
+        }
+        logger.info("Saved library snapshot {}", hash);
+        deleteStale();
+    }
+
+    private void writeSnapshot(File staging, ResourceSet resourceSet, ResourceDescriptionsData descriptions) throws IOException {
+        Manifest manifest = new Manifest();
+        int index = 0;
+        for (Resource resource : new ArrayList<>(resourceSet.getResources())) {
+            String fileName = (index++) + ".bin";
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(staging, fileName)))) {
+                BinaryResourceImpl.EObjectOutputStream eOut = new BinaryResourceImpl.EObjectOutputStream(out, Collections.emptyMap());
+                eOut.saveResource(resource);
+                eOut.flush();
+            }
+            manifest.resources.add(new Manifest.Entry(resource.getURI().toString(), fileName));
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(new File(staging, MANIFEST_FILE)), StandardCharsets.UTF_8)) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(manifest, writer);
+        }
+        if (descriptions != null) {
+            List<IResourceDescription> all = new ArrayList<>();
+            descriptions.getAllResourceDescriptions().forEach(all::add);
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(new File(staging, INDEX_FILE))))) {
+                out.writeInt(all.size());
+                for (IResourceDescription description : all) {
+                    // Descriptions published by SharedLibrary are already serialisable copies
+                    out.writeObject(SerializableResourceDescription.createCopy(description));
+                }
+            }
+        }
+        logger.debug("Wrote {} library resources to {}", manifest.resources.size(), staging);
+    }
+
+    /**
+     * Delete the snapshots of previous libraries or toolchains that have not been used for a day, and the staging
+     * directories of processes that crashed while saving one a day ago. Directories not named like a snapshot or a
+     * staging directory are left alone.
+     */
+    private void deleteStale() {
+        long threshold = System.currentTimeMillis() - STALE_AFTER_MILLIS;
+        File[] stale = snapshotRoot.listFiles(f -> f.isDirectory() && !f.equals(directory) && f.lastModified() < threshold
+                && (SNAPSHOT_NAME.matcher(f.getName()).matches() || STAGING_NAME.matcher(f.getName()).matches()));
+        if (stale == null) {
+            return;
+        }
+        for (File f : stale) {
+            try {
+                deleteRecursively(f.toPath());
+                logger.info("Deleted stale library snapshot {}", f.getName());
+            } catch (IOException e) {
+                logger.warn("Could not delete stale library snapshot {}", f, e);
+            }
+        }
+    }
+
+    /**
+     * Hash the content of every file in the library, the library location and the toolchain jars
+     *
+     * @param libraryDir Directory of the SysML library
+     * @return Hex encoded SHA-256
+     * @throws IOException Library could not be read
+     */
+    public static String computeHash(File libraryDir) throws IOException {
+        // Snapshots store absolute URIs, so a moved library needs its own snapshot
+        Path root = libraryDir.getCanonicalFile().toPath();
+        MessageDigest digest = newDigest(root.toString());
+        hashTree(digest, root);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Hash the content of every file in a library archive and the toolchain jars. Archive URIs do not depend on the
+     * location of the archive, so neither does the hash.
+     *
+     * @param archive Packaged SysML library
+     * @return Hex encoded SHA-256
+     * @throws IOException Archive could not be read
+     */
+    public static String computeHash(LibraryArchive archive) throws IOException {
+        MessageDigest digest = newDigest(LibraryArchive.SCHEME);
+        hashEntries(digest, archive);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Hash the content of every file in the library and the names of the toolchain jars, independent of where the
+     * library and the jars are located, e.g. to key outputs that hold no library URIs
+     *
+     * @param libraryDir Directory of the SysML library
+     * @return Hex encoded SHA-256
+     * @throws IOException Library could not be read
+     */
+    public static String computeContentHash(File libraryDir) throws IOException {
+        MessageDigest digest = newDigest(null);
+        hashTree(digest, libraryDir.getCanonicalFile().toPath());
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Hash the content of every file in a library archive and the names of the toolchain jars
+     *
+     * @param archive Packaged SysML library
+     * @return Hex encoded SHA-256
+     * @throws IOException Archive could not be read
+     */
+    public static String computeContentHash(LibraryArchive archive) throws IOException {
+        MessageDigest digest = newDigest(null);
+        hashEntries(digest, archive);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void hashTree(MessageDigest digest, Path root) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk.filter(Files::isRegularFile).sorted().toList();
+        }
+        for (Path file : files) {
+            digest.update(root.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+            digest.update(Files.readAllBytes(file));
+        }
+    }
+
+    private static void hashEntries(MessageDigest digest, LibraryArchive archive) throws IOException {
+        for (String entry : archive.getEntries()) {
+            digest.update(entry.getBytes(StandardCharsets.UTF_8));
+            digest.update(archive.read(entry));
+        }
+    }
+
+    /**
+     * @param location Location of the library as it appears in resource URIs, null to hash only the names of the
+     *                 toolchain jars instead of their locations
+     * @return Digest initialised with the snapshot format, the location and the toolchain jars
+     */
+    private static MessageDigest newDigest(String location) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        digest.update(FORMAT_VERSION.getBytes(StandardCharsets.UTF_8));
+        if (location != null) {
+            digest.update(location.getBytes(StandardCharsets.UTF_8));
+        }
+        for (Class<?> cls : TOOLCHAIN_CLASSES) {
+            CodeSource source = cls.getProtectionDomain().getCodeSource();
+            String jar = source != null && source.getLocation() != null ? source.getLocation().getPath() : cls.getName();
+            if (location == null) {
+                jar = jar.substring(jar.lastIndexOf('/', jar.length() - 2) + 1);
+            }
+            digest.update(jar.getBytes(StandardCharsets.UTF_8));
+        }
+        return digest;
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(path)) {
+            for (Path p : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    /**
+     * JSON manifest listing the snapshotted resources in load order
+     */
+    private static class Manifest {
+        private final List<Entry> resources = new ArrayList<>();
+
+        private static class Entry {
+            private final String uri;
+            private final String file;
+
+            private Entry(String uri, String file) {
+                this.uri = uri;
+                this.file = file;
+            }
+        }
+    }
+}
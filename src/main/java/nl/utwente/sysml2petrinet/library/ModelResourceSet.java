@@ -0,0 +1,33 @@
+package nl.utwente.sysml2petrinet.library;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.xtext.resource.XtextResourceSet;
+import org.eclipse.xtext.resource.impl.ResourceDescriptionsData;
+
+/**
+ * Lightweight resource set for a single input model. Library URIs are answered by the {@link SharedLibrary} and
+ * the global scope is the library index, so a model links against the library without loading or modifying it.
+ */
+public class ModelResourceSet extends XtextResourceSet {
+    private final SharedLibrary library;
+
+    /**
+     * Members still have to be injected with the SysML injector before use
+     *
+     * @param library Frozen library to delegate to
+     */
+    public ModelResourceSet(SharedLibrary library) {
+        this.library = library;
+        ResourceDescriptionsData.ResourceSetAdapter.installResourceDescriptionsData(this, library.getDescriptions());
+    }
+
+    @Override
+    public Resource getResource(URI uri, boolean loadOnDemand) {
+        Resource resource = library.getResource(uri);
+        if (resource != null) {
+            return resource;
+        }
+        return super.getResource(uri, loadOnDemand);
+    }
+}
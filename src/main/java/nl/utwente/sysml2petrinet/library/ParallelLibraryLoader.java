@@ -0,0 +1,89 @@
+package nl.utwente.sysml2petrinet.library;
+
+import com.google.inject.Provider;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.URIHandler;
+import org.eclipse.xtext.resource.XtextResourceSet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parses library files concurrently, each into its own isolated resource set, and then moves the parsed resources
+ * into the shared resource set. Linking is lazy in Xtext, so no cross references are resolved while parsing and
+ * the resources are added in the order of the given file list, exactly as the sequential loader would. The merged
+ * resource set therefore resolves to the same model.
+ */
+public class ParallelLibraryLoader {
+    private static final Logger logger = LogManager.getLogger(ParallelLibraryLoader.class);
+    private final Provider<XtextResourceSet> resourceSetProvider;
+    private final int parallelism;
+
+    /**
+     * @param resourceSetProvider Provider of fresh resource sets from the SysML injector
+     * @param parallelism         Number of files parsed at the same time
+     */
+    public ParallelLibraryLoader(Provider<XtextResourceSet> resourceSetProvider, int parallelism) {
+        this.resourceSetProvider = resourceSetProvider;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Parse the files and add them to the target resource set
+     *
+     * @param uris   URIs of the library files, in the order they should appear in the resource set
+     * @param target Shared resource set used for linking
+     * @throws IOException A file could not be parsed
+     */
+    public void load(List<URI> uris, ResourceSet target) throws IOException {
+        if (parallelism <= 1 || uris.size() <= 1) {
+            for (URI uri : uris) {
+                target.getResource(uri, true);
+            }
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, uris.size()));
+        try {
+            List<Future<Resource>> parsed = new ArrayList<>();
+            for (URI uri : uris) {
+                parsed.add(executor.submit(() -> {
+                    ResourceSet isolated = resourceSetProvider.get();
+                    copyURIHandlers(target, isolated);
+                    return isolated.getResource(uri, true);
+                }));
+            }
+            // Adding a resource to the target removes it from its isolated resource set
+            for (Future<Resource> future : parsed) {
+                target.getResources().add(future.get());
+            }
+            logger.info("Parsed {} files using {} threads", uris.size(), parallelism);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to parse library file", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing library files", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Make URI handlers registered on the target, such as the one of a library archive, available to the isolated
+     * resource set
+     */
+    private static void copyURIHandlers(ResourceSet from, ResourceSet to) {
+        List<URIHandler> handlers = to.getURIConverter().getURIHandlers();
+        List<URIHandler> extra = from.getURIConverter().getURIHandlers().stream().filter(h -> !handlers.contains(h)).toList();
+        handlers.addAll(0, extra);
+    }
+}
@@ -0,0 +1,286 @@
+package nl.utwente.sysml2petrinet.library;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.BinaryResourceImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.xtext.resource.IResourceDescription;
+import org.eclipse.xtext.resource.IResourceServiceProvider;
+import org.eclipse.xtext.resource.XtextResource;
+import org.eclipse.xtext.resource.impl.ResourceDescriptionsData;
+import org.eclipse.xtext.resource.persistence.SerializableResourceDescription;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The loaded SysML library, shared by all models processed in a JVM.
+ * Library resources are loaded into a private resource set and become visible to models only after
+ * {@link #freeze()} has resolved all their proxies and computed their derived state. Lookups go through a concurrent
+ * map and an immutable index instead of the (unsynchronised) resource set.
+ * Linking a model still writes to library objects: the SysML pilot caches implicit generalizations, memberships and
+ * scopes in adapters of the elements involved, and its scope provider is stateful. Models are therefore parsed
+ * concurrently, each into its own resource set, but linked while holding {@link #getLock()}, see
+ * {@link #forceDerivedState(Resource)}; once linked they are only read and may be transformed concurrently.
+ */
+public class SharedLibrary {
+    private static final Logger logger = LogManager.getLogger(SharedLibrary.class);
+    private final ResourceSet resourceSet;
+    private final Map<URI, Resource> resources = new ConcurrentHashMap<>();
+    private final Set<File> loadedFiles = new HashSet<>();
+    // Not a monitor, models are linked on virtual threads which must not be pinned while they wait
+    private final Lock lock = new ReentrantLock();
+    private LibraryPackageIndex index;
+    private boolean compact;
+    private volatile String hash;
+    private volatile ResourceDescriptionsData descriptions = new ResourceDescriptionsData(Collections.emptyList());
+
+    /**
+     * @param resourceSet Resource set the library is loaded into
+     */
+    public SharedLibrary(ResourceSet resourceSet) {
+        this.resourceSet = resourceSet;
+    }
+
+    /**
+     * @return Resource set to load library files into, only to be used by the thread holding {@link #getLock()}
+     */
+    public ResourceSet getResourceSet() {
+        return resourceSet;
+    }
+
+    /**
+     * @return Lock to hold while loading library files or linking a model against the library
+     */
+    public Lock getLock() {
+        return lock;
+    }
+
+    /**
+     * @param uri URI of a library resource
+     * @return The frozen library resource, or null if the URI is not part of the library
+     */
+    public Resource getResource(URI uri) {
+        return resources.get(uri);
+    }
+
+    public int size() {
+        return resources.size();
+    }
+
+    /**
+     * @return Package index used to load the library on demand, or null if the library is loaded eagerly
+     */
+    public LibraryPackageIndex getIndex() {
+        return index;
+    }
+
+    public void setIndex(LibraryPackageIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * @return Hash of the library content, or null if it was not computed yet
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    /**
+     * @param compact true to replace parsed library resources by plain EMF resources when they are frozen, which
+     *                drops their node models and all other editor-only adapters
+     */
+    public void setCompact(boolean compact) {
+        this.compact = compact;
+    }
+
+    /**
+     * Mark library files as loaded
+     *
+     * @param files Library files about to be loaded
+     * @return The files that were not loaded before, only these should be loaded
+     */
+    public synchronized List<File> claim(Collection<File> files) {
+        List<File> claimed = new ArrayList<>();
+        for (File f : files) {
+            if (loadedFiles.add(f)) {
+                claimed.add(f);
+            }
+        }
+        return claimed;
+    }
+
+    public synchronized int getLoadedFileCount() {
+        return loadedFiles.size();
+    }
+
+    /**
+     * @return Exported names of all frozen library resources, used as the global scope of models
+     */
+    public ResourceDescriptionsData getDescriptions() {
+        return descriptions;
+    }
+
+    /**
+     * Resolve all proxies of resources loaded since the last call and publish them to models
+     */
+    public void freeze() {
+        freeze(Collections.emptyList());
+    }
+
+    /**
+     * Resolve all proxies of resources loaded since the last call and publish them to models, reusing descriptions
+     * computed earlier instead of deriving them from the resources again
+     *
+     * @param known Descriptions of (some of) the loaded resources, e.g. from a snapshot
+     */
+    public void freeze(Collection<? extends IResourceDescription> known) {
+        lock.lock();
+        try {
+            publish(known);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void publish(Collection<? extends IResourceDescription> known) {
+        List<Resource> added = new ArrayList<>();
+        // Resolving may load further resources on demand, so repeat until nothing new appears
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Resource resource : new ArrayList<>(resourceSet.getResources())) {
+                if (!resources.containsKey(resource.getURI()) && !added.contains(resource)) {
+                    EcoreUtil.resolveAll(resource);
+                    added.add(resource);
+                    changed = true;
+                }
+            }
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+        if (compact) {
+            added = compact(added);
+        }
+        long start = System.currentTimeMillis();
+        for (Resource resource : added) {
+            forceDerivedState(resource);
+        }
+        logger.debug("Computed derived state of {} library resources in {} ms", added.size(), System.currentTimeMillis() - start);
+
+        Map<URI, IResourceDescription> knownByURI = new HashMap<>();
+        for (IResourceDescription description : known) {
+            knownByURI.put(description.getURI(), description);
+        }
+        ResourceDescriptionsData data = descriptions.copy();
+        int computed = 0;
+        for (Resource resource : added) {
+            IResourceDescription description = knownByURI.get(resource.getURI());
+            if (description == null) {
+                IResourceServiceProvider provider = IResourceServiceProvider.Registry.INSTANCE.getResourceServiceProvider(resource.getURI());
+                if (provider != null) {
+                    description = SerializableResourceDescription.createCopy(provider.getResourceDescriptionManager().getResourceDescription(resource));
+                    computed++;
+                }
+            }
+            if (description != null) {
+                data.addDescription(resource.getURI(), description);
+            }
+            resources.put(resource.getURI(), resource);
+        }
+        descriptions = data;
+        logger.debug("Published {} library resources, computed {} descriptions", added.size(), computed);
+    }
+
+    /**
+     * Evaluate every derived feature of the objects in a resource, so the state the SysML pilot computes lazily on
+     * first access (on these objects and on the library elements they refer to) exists before the resource is read
+     * by several threads. Has to be called while holding {@link #getLock()}.
+     *
+     * @param resource Resolved resource
+     */
+    public static void forceDerivedState(Resource resource) {
+        // Computing derived state may add implicit elements, so iterate over a copy
+        List<EObject> objects = new ArrayList<>();
+        resource.getAllContents().forEachRemaining(objects::add);
+        for (EObject object : objects) {
+            for (EStructuralFeature feature : object.eClass().getEAllStructuralFeatures()) {
+                if (feature.isDerived()) {
+                    try {
+                        object.eGet(feature);
+                    } catch (RuntimeException e) {
+                        // Incomplete elements cannot compute some features, they are computed on access then
+                        logger.trace("Could not compute {} of {}", feature.getName(), object, e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Replace Xtext resources by binary resources holding the same objects. The library is never edited or
+     * serialised, so the node model (parse tree and text regions) of its resources is dead weight once linked.
+     * All resources are written before any is replaced, so references between them survive as URIs.
+     *
+     * @param added Resolved resources that are not published yet
+     * @return The resources to publish instead
+     */
+    private List<Resource> compact(List<Resource> added) {
+        Map<Resource, byte[]> serialized = new LinkedHashMap<>();
+        try {
+            for (Resource resource : added) {
+                if (resource instanceof XtextResource) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    BinaryResourceImpl.EObjectOutputStream eOut = new BinaryResourceImpl.EObjectOutputStream(out, Collections.emptyMap());
+                    eOut.saveResource(resource);
+                    eOut.flush();
+                    serialized.put(resource, out.toByteArray());
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Could not compact library resources, keeping node models", e);
+            return added;
+        }
+
+        List<Resource> result = new ArrayList<>();
+        for (Resource resource : added) {
+            byte[] bytes = serialized.get(resource);
+            if (bytes == null) {
+                result.add(resource);
+                continue;
+            }
+            Resource binary = new BinaryResourceImpl(resource.getURI());
+            int index = resourceSet.getResources().indexOf(resource);
+            resourceSet.getResources().remove(index);
+            resourceSet.getResources().add(index, binary);
+            try {
+                binary.load(new ByteArrayInputStream(bytes), Collections.emptyMap());
+            } catch (IOException e) {
+                // Cannot happen for an in-memory stream written just before
+                throw new IllegalStateException(e);
+            }
+            result.add(binary);
+        }
+        for (Resource resource : result) {
+            EcoreUtil.resolveAll(resource);
+        }
+        logger.info("Compacted {} library resources", serialized.size());
+        return result;
+    }
+}
@@ -3,6 +3,7 @@ package nl.utwente.sysml2petrinet.m2m;
 import nl.utwente.sysml2petrinet.PetriNet.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.eclipse.emf.common.util.Monitor;
 import org.eclipse.emf.common.util.URI;
 import org.omg.sysml.lang.sysml.*;
 import org.eclipse.emf.ecore.resource.Resource;
@@ -14,28 +15,46 @@ import org.eclipse.emf.ecore.util.Diagnostician;
 import petrinet.PetrinetPackage;
 import petrinet.PetrinetFactory;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 
 
 public class Transformer {
     private static final Logger logger = LogManager.getLogger(Transformer.class);
     
     /**
-     * Generate an XML-safe ID using a simple counter
+     * Generate an XML-safe ID using a simple counter. The counter belongs to the transformer, so ids do not depend
+     * on other models transformed before or at the same time.
      *
      */
-    private static int idCounter = 1;
-    private static String generateXmlSafeId() {
+    private int idCounter = 1;
+    private String generateXmlSafeId() {
         return "arc" + (idCounter++);
     }
     private final Namespace rootElement;
     private final Element rootAction;
+    private Monitor monitor;
 
     public Transformer(Namespace rootElement) {
         this.rootElement = rootElement;
         this.rootAction = rootElement.getOwnedElement().getFirst();
     }
 
+    /**
+     * @param monitor Monitor checked while transforming, the transformation stops once it is cancelled
+     */
+    public void setMonitor(Monitor monitor) {
+        this.monitor = monitor;
+    }
+
+    private void checkCanceled() {
+        if (monitor != null && monitor.isCanceled()) {
+            throw new CancellationException("Transformation cancelled");
+        }
+    }
+
 
     /**
      * Postprocess merge node so it fits definition for merge node. Not the best solution but it works, as it does not fit in the main transformation
@@ -74,6 +93,7 @@ public class Transformer {
         int cloneCounter = 1;
 
         for (Map.Entry<Node, List<Arc>> entry : nodeToRelevantArcs.entrySet()) {
+            checkCanceled();
             Node targetNode = entry.getKey();
             List<Arc> relevantArcs = entry.getValue();
 
@@ -206,6 +226,7 @@ public class Transformer {
 //            elements.add(start.getMemberElement());
             // Create all places and transitions
             for (Element element : elements) {
+                checkCanceled();
                 if(element instanceof ForkNode || element instanceof MergeNode || element instanceof JoinNode || element instanceof  DecisionNode) {
                     Transition transition = new Transition();
                     if(element instanceof MergeNode){
@@ -238,6 +259,7 @@ public class Transformer {
 
             // Create arcs
             for (Element element : elements) {
+                checkCanceled();
                 if (element instanceof SuccessionAsUsage || element instanceof TransitionUsage) {
                     Element source;
                     Element target;
@@ -325,17 +347,21 @@ public class Transformer {
      * @param outputPath Output path to save the model
      * @throws Exception Violation on constraints
      */
-    public void saveToXMI(PetriNet petriNet, String outputPath) throws Exception {
-        logger.info("Exporting XMI");
-        //Setup XMI and register petriNet package (From PetriNet metamodel)
-        Resource.Factory.Registry.INSTANCE.getExtensionToFactoryMap().put("xmi", new XMIResourceFactoryImpl());
-        ResourceSet resourceSet = new ResourceSetImpl();
-        Resource resource = resourceSet.createResource(URI.createFileURI(outputPath));
-        resourceSet.getPackageRegistry().put(PetrinetPackage.eNS_URI, PetrinetPackage.eINSTANCE);
+    public static void saveToXMI(PetriNet petriNet, String outputPath) throws Exception {
+        petrinet.PetriNet petriNetObject = toEMF(petriNet);
+        validate(petriNetObject);
+        saveToXMI(petriNetObject, outputPath);
+    }
 
+    /**
+     * Create the EMF object (PetriNet metamodel) of a transformed object
+     *
+     * @param petriNet PetriNet object
+     * @return Root of the EMF model
+     */
+    public static petrinet.PetriNet toEMF(PetriNet petriNet) {
         // Create the root PetriNet object
         petrinet.PetriNet petriNetObject = PetrinetFactory.eINSTANCE.createPetriNet();
-        resource.getContents().add(petriNetObject);
         petriNetObject.setName(petriNet.getName());
         Map<Node, petrinet.Node> nodeMap = new HashMap<>();
 
@@ -367,11 +393,16 @@ public class Transformer {
             petriNetObject.getArcs().add(arcObject);
             logger.debug("Created EMF Arc: {} with weight: {}", arc.getName(), arc.getWeight());
         }
+        return petriNetObject;
+    }
 
-        Map<String, Object> options = new HashMap<>();
-        options.put("ENCODING", "UTF-8");
-
-        // Validate the entire model using defined constraint before saving
+    /**
+     * Validate the EMF model using defined constraint
+     *
+     * @param petriNetObject Root of the EMF model
+     * @throws Exception Violation on constraints
+     */
+    public static void validate(petrinet.PetriNet petriNetObject) throws Exception {
         Diagnostic diagnostic = Diagnostician.INSTANCE.validate(petriNetObject);
         if (diagnostic.getSeverity() != Diagnostic.OK) {
             StringBuilder errorMessage = new StringBuilder("Model validation failed:\n");
@@ -381,8 +412,46 @@ public class Transformer {
             throw new Exception(errorMessage.toString());
         }
         logger.info("Model validation passed");
+    }
 
-        resource.save(options);
+    /**
+     * Save a validated EMF model to XMI
+     *
+     * @param petriNetObject Root of the EMF model, see {@link #toEMF(PetriNet)}
+     * @param outputPath     Output path to save the model
+     * @throws IOException IO errors
+     */
+    public static void saveToXMI(petrinet.PetriNet petriNetObject, String outputPath) throws IOException {
+        logger.info("Exporting XMI");
+        createXMIResource(petriNetObject, URI.createFileURI(outputPath)).save(xmiOptions());
         logger.info("Saved XMI file to: {}", outputPath);
     }
+
+    /**
+     * Write the validated EMF model as XMI to a stream, which is left open
+     *
+     * @param petriNetObject Validated EMF model
+     * @param out            Stream to write to
+     * @throws IOException IO errors
+     */
+    public static void saveToXMI(petrinet.PetriNet petriNetObject, OutputStream out) throws IOException {
+        // The URI only names the resource, nothing is written to it
+        createXMIResource(petriNetObject, URI.createURI("petrinet.xmi")).save(out, xmiOptions());
+    }
+
+    private static Resource createXMIResource(petrinet.PetriNet petriNetObject, URI uri) {
+        //Setup XMI and register petriNet package (From PetriNet metamodel)
+        Resource.Factory.Registry.INSTANCE.getExtensionToFactoryMap().put("xmi", new XMIResourceFactoryImpl());
+        ResourceSet resourceSet = new ResourceSetImpl();
+        Resource resource = resourceSet.createResource(uri);
+        resourceSet.getPackageRegistry().put(PetrinetPackage.eNS_URI, PetrinetPackage.eINSTANCE);
+        resource.getContents().add(petriNetObject);
+        return resource;
+    }
+
+    private static Map<String, Object> xmiOptions() {
+        Map<String, Object> options = new HashMap<>();
+        options.put("ENCODING", "UTF-8");
+        return options;
+    }
 }
@@ -3,14 +3,17 @@ package nl.utwente.sysml2petrinet.m2t_direct;
 import nl.utwente.sysml2petrinet.PetriNet.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.eclipse.emf.common.util.Monitor;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.util.concurrent.CancellationException;
 
 /**
  * Transform PetriNet intermediate object directly to PNML file
@@ -19,6 +22,7 @@ public class TransformerPNML {
     private static final Logger logger = LogManager.getLogger(TransformerPNML.class);
     private final PetriNet petriNet;
     private final String baseFilename;
+    private Monitor monitor;
 
     public TransformerPNML(PetriNet petriNet, String inputFilename) {
         this.petriNet = petriNet;
@@ -26,13 +30,27 @@ public class TransformerPNML {
         this.baseFilename = new File(inputFilename).getName();
     }
 
+    /**
+     * @param monitor Monitor checked while writing, writing stops once it is cancelled
+     */
+    public void setMonitor(Monitor monitor) {
+        this.monitor = monitor;
+    }
+
+    private void checkCanceled() {
+        if (monitor != null && monitor.isCanceled()) {
+            throw new CancellationException("PNML export cancelled");
+        }
+    }
+
     /**
      * Save intermediate object to PNML file directly
      *
      * @param outputDirectory Output directory
+     * @return The PNML file written
      * @throws IOException IO errors
      */
-    public void saveToPNML(String outputDirectory, boolean isoStandard) throws IOException {
+    public File saveToPNML(String outputDirectory, boolean isoStandard) throws IOException {
         // Create output directory if it doesn't exist
         File outputDir = new File(outputDirectory);
         if (!outputDir.exists() && outputDir.mkdirs()) {
@@ -40,62 +58,95 @@ public class TransformerPNML {
         }
 
         // Use input base file name as output file name
-        String baseName = baseFilename.substring(0, baseFilename.lastIndexOf('.'));
-        String outputPath = Paths.get(outputDirectory, baseName + ".pnml").toString();
+        String outputPath = Paths.get(outputDirectory, getOutputName()).toString();
 
-        try (Writer writer = new OutputStreamWriter(new FileOutputStream(outputPath), StandardCharsets.UTF_8)) {
-            // Write XML declaration, and PNML header
-            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-            writer.write(System.lineSeparator());
-            if(isoStandard) {
-                writer.write("<pnml xmlns=\"http://www.pnml.org/version-2009/grammar/pnml\">");
-            }else{
-                writer.write("<pnml>");
-            }
-            writer.write(System.lineSeparator());
-            writer.write("  ");
-            // PTNet type
-            writer.write("<net id=\"" + petriNet.getName() + "\" type=\"http://www.pnml.org/version-2009/grammar/ptnet\">");
-            writer.write(System.lineSeparator());
-            // Add a page element
-            writer.write("    <page id=\"page1\">\n");
-            // Write places and transitions
-            for (Node node : petriNet.getNodes()) {
-                if (node instanceof Place place) {
-                    writer.write("      <place id=\"" + place.getName() + "\">\n");
-                    // Write initial marking
-                    if (place.getInitialMarking() > 0) {
-                        writer.write("        <initialMarking>\n");
-                        if(isoStandard){
-                            writer.write("          <text>" + place.getInitialMarking() + "</text>\n");
-                        }else {
-                            writer.write("          <value>" + place.getInitialMarking() + "</value>\n");
-                        }
-                        writer.write("        </initialMarking>\n");
+        try (OutputStream out = new FileOutputStream(outputPath)) {
+            writePNML(out, isoStandard);
+        }
+        logger.info("Saved PNML file to: {}", outputPath);
+        return new File(outputPath);
+    }
+
+    /**
+     * @return Name of the PNML file, the input base file name with extension .pnml
+     */
+    public String getOutputName() {
+        return baseFilename.substring(0, baseFilename.lastIndexOf('.')) + ".pnml";
+    }
+
+    /**
+     * Write intermediate object as PNML to a stream, which is left open
+     *
+     * @param out         Stream to write to
+     * @param isoStandard true for ISO/IEC 15909 PNML
+     * @throws IOException IO errors
+     */
+    public void writePNML(OutputStream out, boolean isoStandard) throws IOException {
+        // Not closed, the caller owns the stream
+        writePNML(new OutputStreamWriter(out, StandardCharsets.UTF_8), isoStandard);
+    }
+
+    /**
+     * Write intermediate object as PNML to a writer, which is left open. The XML declaration states UTF-8.
+     *
+     * @param writer      Writer to write to
+     * @param isoStandard true for ISO/IEC 15909 PNML
+     * @throws IOException IO errors
+     */
+    public void writePNML(Writer writer, boolean isoStandard) throws IOException {
+        // Write XML declaration, and PNML header
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        writer.write(System.lineSeparator());
+        if(isoStandard) {
+            writer.write("<pnml xmlns=\"http://www.pnml.org/version-2009/grammar/pnml\">");
+        }else{
+            writer.write("<pnml>");
+        }
+        writer.write(System.lineSeparator());
+        writer.write("  ");
+        // PTNet type
+        writer.write("<net id=\"" + petriNet.getName() + "\" type=\"http://www.pnml.org/version-2009/grammar/ptnet\">");
+        writer.write(System.lineSeparator());
+        // Add a page element
+        writer.write("    <page id=\"page1\">\n");
+        // Write places and transitions
+        for (Node node : petriNet.getNodes()) {
+            checkCanceled();
+            if (node instanceof Place place) {
+                writer.write("      <place id=\"" + place.getName() + "\">\n");
+                // Write initial marking
+                if (place.getInitialMarking() > 0) {
+                    writer.write("        <initialMarking>\n");
+                    if(isoStandard){
+                        writer.write("          <text>" + place.getInitialMarking() + "</text>\n");
+                    }else {
+                        writer.write("          <value>" + place.getInitialMarking() + "</value>\n");
                     }
-                    writer.write("      </place>\n");
-                } else if (node instanceof Transition transition) {
-                    writer.write("      <transition id=\"" + transition.getName() + "\">\n");
-                    writer.write("      </transition>\n");
+                    writer.write("        </initialMarking>\n");
                 }
+                writer.write("      </place>\n");
+            } else if (node instanceof Transition transition) {
+                writer.write("      <transition id=\"" + transition.getName() + "\">\n");
+                writer.write("      </transition>\n");
             }
-            // Write arcs
-            for (Arc arc : petriNet.getArcs()) {
-                writer.write("      <arc id=\"" + arc.getName() + "\" source=\"" + arc.getSource().getName() + "\" target=\"" + arc.getTarget().getName() + "\">\n");
-                writer.write("        <inscription>\n");
-                if(isoStandard) {
-                    writer.write("          <text>" + arc.getWeight() + "</text>\n");
-                }else {
-                    writer.write("          <value>" + arc.getWeight() + "</value>\n");
-                }
-                writer.write("        </inscription>\n");
-                writer.write("      </arc>\n");
+        }
+        // Write arcs
+        for (Arc arc : petriNet.getArcs()) {
+            checkCanceled();
+            writer.write("      <arc id=\"" + arc.getName() + "\" source=\"" + arc.getSource().getName() + "\" target=\"" + arc.getTarget().getName() + "\">\n");
+            writer.write("        <inscription>\n");
+            if(isoStandard) {
+                writer.write("          <text>" + arc.getWeight() + "</text>\n");
+            }else {
+                writer.write("          <value>" + arc.getWeight() + "</value>\n");
             }
-            // Close page and net
-            writer.write("    </page>\n");
-            writer.write("  </net>\n");
-            writer.write("</pnml>\n");
+            writer.write("        </inscription>\n");
+            writer.write("      </arc>\n");
         }
-        logger.info("Saved PNML file to: {}", outputPath);
+        // Close page and net
+        writer.write("    </page>\n");
+        writer.write("  </net>\n");
+        writer.write("</pnml>\n");
+        writer.flush();
     }
 } 
\ No newline at end of file
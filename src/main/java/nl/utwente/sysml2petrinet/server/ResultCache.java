@@ -0,0 +1,242 @@
+package nl.utwente.sysml2petrinet.server;
+
+import nl.utwente.sysml2petrinet.OutputTarget;
+import nl.utwente.sysml2petrinet.PetriNet.PetriNet;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory cache of the results of a resident transformation, so a model that is sent again is answered without
+ * parsing or transforming it. Entries hold the Petri net and its serialised output and are keyed by the SHA-256 of
+ * the model and the {@link OutputTarget}. The least recently used entries are evicted once the entries exceed the
+ * byte budget; with the soft tier enabled they are kept behind soft references instead, until the garbage collector
+ * needs the memory. Soft entries the garbage collector cleared are purged through a reference queue.
+ */
+public class ResultCache {
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+    private static final long BYTES_PER_ELEMENT = 256;
+
+    private final long maxBytes;
+    private final boolean softTier;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, SoftEntry> softEntries = new HashMap<>();
+    private final ReferenceQueue<Entry> cleared = new ReferenceQueue<>();
+    private long bytes;
+    private long hits;
+    private long softHits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maxBytes Budget of the entries, estimated from the output size and the size of the Petri net
+     * @param softTier true to keep evicted entries behind soft references
+     */
+    public ResultCache(long maxBytes, boolean softTier) {
+        this.maxBytes = maxBytes;
+        this.softTier = softTier;
+    }
+
+    /**
+     * @param model  Content of a .sysml model
+     * @param target Output format
+     * @return Key of the result of the model
+     */
+    public static String key(String model, OutputTarget target) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(target.name().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(model.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            // Every JDK provides SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param key Key from {@link #key(String, OutputTarget)}
+     * @return The cached result, or null
+     */
+    public synchronized Entry get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            hits++;
+            return entry;
+        }
+        SoftEntry reference = softEntries.remove(key);
+        entry = reference != null ? reference.get() : null;
+        if (entry != null) {
+            softHits++;
+            insert(key, entry);
+            return entry;
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * @param key      Key from {@link #key(String, OutputTarget)}
+     * @param petriNet Petri net of the model, shared by all later hits so it must not be modified
+     * @param output   Serialised output of the model
+     */
+    public void put(String key, PetriNet petriNet, byte[] output) {
+        put(key, new Entry(petriNet, output));
+    }
+
+    synchronized void put(String key, Entry entry) {
+        if (entry.getBytes() > maxBytes) {
+            return;
+        }
+        softEntries.remove(key);
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            bytes -= previous.getBytes();
+        }
+        insert(key, entry);
+    }
+
+    private void insert(String key, Entry entry) {
+        entries.put(key, entry);
+        bytes += entry.getBytes();
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Entry> evicted = eldest.next();
+            eldest.remove();
+            bytes -= evicted.getValue().getBytes();
+            evictions++;
+            if (softTier) {
+                softEntries.put(evicted.getKey(), new SoftEntry(evicted.getKey(), evicted.getValue(), cleared));
+            }
+        }
+        purge();
+    }
+
+    /**
+     * Remove the soft entries the garbage collector cleared since the last call
+     */
+    private void purge() {
+        Reference<? extends Entry> reference;
+        while ((reference = cleared.poll()) != null) {
+            SoftEntry entry = (SoftEntry) reference;
+            // The key may have been stored again meanwhile
+            softEntries.remove(entry.key, entry);
+        }
+    }
+
+    /**
+     * Remove all entries, the counters are kept
+     */
+    public synchronized void clear() {
+        entries.clear();
+        softEntries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return Consistent copy of the counters, e.g. for serialising
+     */
+    public synchronized Stats stats() {
+        purge();
+        return new Stats(this);
+    }
+
+    /**
+     * Evicted entry, remembers its key so it can be removed once cleared
+     */
+    private static class SoftEntry extends SoftReference<Entry> {
+        private final String key;
+
+        SoftEntry(String key, Entry entry, ReferenceQueue<Entry> queue) {
+            super(entry, queue);
+            this.key = key;
+        }
+    }
+
+    /**
+     * Result of one model
+     */
+    public static class Entry {
+        private final PetriNet petriNet;
+        private final byte[] output;
+        private final long bytes;
+
+        Entry(PetriNet petriNet, byte[] output) {
+            this.petriNet = petriNet;
+            this.output = output;
+            int elements = petriNet != null ? petriNet.getNodes().size() + petriNet.getArcs().size() : 0;
+            this.bytes = output.length + elements * BYTES_PER_ELEMENT;
+        }
+
+        public PetriNet getPetriNet() {
+            return petriNet;
+        }
+
+        public byte[] getOutput() {
+            return output;
+        }
+
+        long getBytes() {
+            return bytes;
+        }
+    }
+
+    /**
+     * Counters at one point in time
+     */
+    public static class Stats {
+        private final long hits;
+        private final long softHits;
+        private final long misses;
+        private final long evictions;
+        private final int entries;
+        private final int softEntries;
+        private final long bytes;
+        private final long maxBytes;
+
+        private Stats(ResultCache cache) {
+            this.hits = cache.hits;
+            this.softHits = cache.softHits;
+            this.misses = cache.misses;
+            this.evictions = cache.evictions;
+            this.entries = cache.entries.size();
+            this.softEntries = cache.softEntries.size();
+            this.bytes = cache.bytes;
+            this.maxBytes = cache.maxBytes;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getSoftHits() {
+            return softHits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package nl.utwente.sysml2petrinet.server;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of a {@link TransformationServer}: requests by outcome, queue depth and latency. Latency percentiles are
+ * taken over the most recent requests.
+ */
+public class ServerMetrics {
+    private static final int WINDOW = 1024;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong totalMillis = new AtomicLong();
+    private final AtomicLong maxMillis = new AtomicLong();
+    private final long[] recent = new long[WINDOW];
+    private long recentCount;
+
+    /**
+     * @param queueCapacity Maximum number of requests waiting for a worker
+     * @return true if the request may wait, false if the queue is full
+     */
+    boolean enqueue(int queueCapacity) {
+        requests.incrementAndGet();
+        if (queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            rejected.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    void started() {
+        queued.decrementAndGet();
+        inFlight.incrementAndGet();
+    }
+
+    void abandoned() {
+        queued.decrementAndGet();
+    }
+
+    /**
+     * @param outcome Outcome of the request
+     * @param millis  Time from receiving the request until its response, queueing included
+     */
+    void finished(Outcome outcome, long millis) {
+        inFlight.decrementAndGet();
+        record(outcome, millis);
+    }
+
+    /**
+     * Count a request answered from the {@link ResultCache}, without queueing
+     *
+     * @param millis Time from receiving the request until its response
+     */
+    void cached(long millis) {
+        requests.incrementAndGet();
+        record(Outcome.SUCCEEDED, millis);
+    }
+
+    private void record(Outcome outcome, long millis) {
+        switch (outcome) {
+            case SUCCEEDED -> succeeded.incrementAndGet();
+            case TIMED_OUT -> timedOut.incrementAndGet();
+            default -> failed.incrementAndGet();
+        }
+        totalMillis.addAndGet(millis);
+        maxMillis.accumulateAndGet(millis, Math::max);
+        synchronized (recent) {
+            recent[(int) (recentCount++ % WINDOW)] = millis;
+        }
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return Consistent copy of the counters, e.g. for serialising
+     */
+    public Snapshot snapshot() {
+        long[] window;
+        synchronized (recent) {
+            window = Arrays.copyOf(recent, (int) Math.min(recentCount, WINDOW));
+        }
+        return new Snapshot(this, window);
+    }
+
+    enum Outcome {
+        SUCCEEDED, FAILED, TIMED_OUT
+    }
+
+    /**
+     * Counters at one point in time
+     */
+    public static class Snapshot {
+        private final long requests;
+        private final long succeeded;
+        private final long failed;
+        private final long rejected;
+        private final long timedOut;
+        private final int queued;
+        private final int inFlight;
+        private final double meanMillis;
+        private final long maxMillis;
+        private final long p50Millis;
+        private final long p95Millis;
+        private final long p99Millis;
+
+        private Snapshot(ServerMetrics metrics, long[] window) {
+            this.requests = metrics.requests.get();
+            this.succeeded = metrics.succeeded.get();
+            this.failed = metrics.failed.get();
+            this.rejected = metrics.rejected.get();
+            this.timedOut = metrics.timedOut.get();
+            this.queued = metrics.queued.get();
+            this.inFlight = metrics.inFlight.get();
+            long finished = succeeded + failed + timedOut;
+            this.meanMillis = finished > 0 ? (double) metrics.totalMillis.get() / finished : 0;
+            this.maxMillis = metrics.maxMillis.get();
+            Arrays.sort(window);
+            this.p50Millis = percentile(window, 0.50);
+            this.p95Millis = percentile(window, 0.95);
+            this.p99Millis = percentile(window, 0.99);
+        }
+
+        private static long percentile(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)];
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getSucceeded() {
+            return succeeded;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+    }
+}
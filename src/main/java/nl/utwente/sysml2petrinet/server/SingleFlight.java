@@ -0,0 +1,67 @@
+package nl.utwente.sysml2petrinet.server;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces identical concurrent computations: the first caller of a key runs the computation, callers with the same
+ * key arriving while it is in progress wait for it and share its result or its failure. Nothing is kept once the
+ * computation is done, see {@link ResultCache} for that.
+ *
+ * @param <K> Key of a computation
+ * @param <V> Result of a computation
+ */
+public class SingleFlight<K, V> {
+    private final Map<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * @param key  Key of the computation
+     * @param task Computation, only called if no computation of the key is in progress
+     * @return Result of the computation
+     * @throws Exception Failure of the computation, thrown to every caller sharing it
+     */
+    public V run(K key, Callable<V> task) throws Exception {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> leader = flights.putIfAbsent(key, flight);
+        if (leader != null) {
+            coalesced.incrementAndGet();
+            try {
+                return leader.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+        try {
+            V result = task.call();
+            flight.complete(result);
+            return result;
+        } catch (Throwable e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    /**
+     * @return Number of callers that shared the computation of another caller
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return Number of computations in progress
+     */
+    public int getInProgress() {
+        return flights.size();
+    }
+}
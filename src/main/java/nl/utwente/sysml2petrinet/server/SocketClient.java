@@ -0,0 +1,146 @@
+package nl.utwente.sysml2petrinet.server;
+
+import nl.utwente.sysml2petrinet.OutputTarget;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Client of a {@link SocketServer}. Requests are pipelined over one connection: {@link #transform} returns as soon as
+ * the request is sent, and a reader thread completes the futures as the responses arrive.
+ */
+public class SocketClient implements AutoCloseable {
+    private final SocketChannel channel;
+    private final Lock writeLock = new ReentrantLock();
+    // Guards registering requests against the reader failing the pending ones once the connection is gone
+    private final Lock pendingLock = new ReentrantLock();
+    private final Map<Integer, CompletableFuture<byte[]>> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private IOException closed;
+
+    /**
+     * @param socketPath Path of the server's socket
+     * @throws IOException Server not reachable
+     */
+    public SocketClient(Path socketPath) throws IOException {
+        this.channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.connect(UnixDomainSocketAddress.of(socketPath));
+        Thread.ofVirtual().name("socket-client-reader").start(this::read);
+    }
+
+    /**
+     * Send a model to the server
+     *
+     * @param model   SysML source
+     * @param target  Output format
+     * @param timeout Timeout of the transformation on the server, or null for the server's default; limited to
+     *                {@link Integer#MAX_VALUE} milliseconds
+     * @return The output; fails with a {@link TimeoutException} on timeout, or an exception with the server's message
+     * if the model is invalid
+     * @throws IOException Request could not be sent, or the connection is closed
+     * @throws IllegalArgumentException Negative timeout
+     */
+    public CompletableFuture<byte[]> transform(String model, OutputTarget target, Duration timeout) throws IOException {
+        byte[] text = model.getBytes(StandardCharsets.UTF_8);
+        if (SocketServer.REQUEST_HEADER_BYTES + text.length > SocketServer.MAX_FRAME_BYTES) {
+            throw new IOException("Model too large");
+        }
+        if (timeout != null && timeout.isNegative()) {
+            throw new IllegalArgumentException("Negative timeout " + timeout);
+        }
+        // 0 means the server's default, so a timeout below a millisecond is rounded up
+        int timeoutMillis = timeout != null ? (int) Math.clamp(timeout.toMillis(), 1, Integer.MAX_VALUE) : 0;
+        int id = nextId.getAndIncrement();
+        CompletableFuture<byte[]> response = new CompletableFuture<>();
+        pendingLock.lock();
+        try {
+            if (closed != null) {
+                throw new IOException("Connection closed", closed);
+            }
+            pending.put(id, response);
+        } finally {
+            pendingLock.unlock();
+        }
+        ByteBuffer frame = ByteBuffer.allocate(4 + SocketServer.REQUEST_HEADER_BYTES + text.length);
+        frame.putInt(SocketServer.REQUEST_HEADER_BYTES + text.length).putInt(id).put((byte) target.ordinal())
+                .putInt(timeoutMillis).put(text).flip();
+        writeLock.lock();
+        try {
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+        } catch (IOException e) {
+            pending.remove(id);
+            throw e;
+        } finally {
+            writeLock.unlock();
+        }
+        return response;
+    }
+
+    private void read() {
+        IOException failure = new EOFException("Connection closed");
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            while (true) {
+                int length = in.readInt();
+                if (length < SocketServer.RESPONSE_HEADER_BYTES || length > SocketServer.MAX_FRAME_BYTES) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                int id = in.readInt();
+                byte status = in.readByte();
+                byte[] payload = new byte[length - SocketServer.RESPONSE_HEADER_BYTES];
+                in.readFully(payload);
+                CompletableFuture<byte[]> response = pending.remove(id);
+                if (response == null) {
+                    continue;
+                }
+                switch (status) {
+                    case SocketServer.OK -> response.complete(payload);
+                    case SocketServer.TIMED_OUT -> response.completeExceptionally(new TimeoutException(new String(payload, StandardCharsets.UTF_8)));
+                    default -> response.completeExceptionally(new Exception(new String(payload, StandardCharsets.UTF_8)));
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            // Nothing arrives for the requests still pending, and later requests are refused
+            List<CompletableFuture<byte[]>> unanswered;
+            pendingLock.lock();
+            try {
+                closed = failure;
+                unanswered = new ArrayList<>(pending.values());
+                pending.clear();
+            } finally {
+                pendingLock.unlock();
+            }
+            for (CompletableFuture<byte[]> response : unanswered) {
+                response.completeExceptionally(failure);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
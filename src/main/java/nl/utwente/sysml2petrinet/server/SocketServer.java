@@ -0,0 +1,292 @@
+package nl.utwente.sysml2petrinet.server;
+
+import nl.utwente.sysml2petrinet.OutputTarget;
+import nl.utwente.sysml2petrinet.PetriNet.PetriNet;
+import nl.utwente.sysml2petrinet.SysML2PetriNet;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Binary protocol over a Unix domain socket for local clients, without the overhead of HTTP and TCP. All integers
+ * are big-endian.
+ * <ul>
+ *     <li>Request frame: <code>int length</code> (of the rest of the frame), <code>int id</code>,
+ *     <code>byte target</code> (ordinal of the {@link OutputTarget}), <code>int timeout</code> (milliseconds, 0 for
+ *     the default of 30 s), then the UTF-8 SysML source</li>
+ *     <li>Response frame: <code>int length</code>, <code>int id</code> of the request, <code>byte status</code>
+ *     ({@link #OK}, {@link #INVALID}, {@link #TIMED_OUT}, {@link #FAILED}), then the output, or the UTF-8 error
+ *     message</li>
+ * </ul>
+ * Requests may be pipelined: a client sends further requests without waiting, they are transformed concurrently and
+ * every response is sent as soon as it is ready, so responses may arrive out of order. Up to 64 requests per
+ * connection are in progress, further requests are only read once one of them is answered. Requests for a model and
+ * target already being transformed, on any connection, share that transformation.
+ * See {@link SocketClient} for a client.
+ */
+public class SocketServer implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(SocketServer.class);
+    public static final byte OK = 0;
+    public static final byte INVALID = 1;
+    public static final byte TIMED_OUT = 2;
+    // The transformation failed for another reason than its model, e.g. an IO error or the server shutting down
+    public static final byte FAILED = 3;
+    static final int REQUEST_HEADER_BYTES = 9;
+    static final int RESPONSE_HEADER_BYTES = 5;
+    static final int MAX_FRAME_BYTES = 16 << 20;
+    private static final int MAX_PIPELINED = 64;
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+
+    private final SysML2PetriNet sysML2PetriNet;
+    private final Path socketPath;
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore workers;
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final SingleFlight<String, ResultCache.Entry> flights = new SingleFlight<>();
+    private ResultCache resultCache;
+
+    /**
+     * @param sysML2PetriNet Transformation to keep resident
+     * @param socketPath     Path of the socket, a stale socket file is replaced
+     * @param workers        Maximum number of concurrent transformations over all connections
+     * @throws IOException Socket could not be bound
+     */
+    public SocketServer(SysML2PetriNet sysML2PetriNet, Path socketPath, int workers) throws IOException {
+        this.sysML2PetriNet = sysML2PetriNet;
+        this.socketPath = socketPath;
+        this.workers = new Semaphore(Math.max(1, workers));
+        Files.deleteIfExists(socketPath);
+        this.serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        serverChannel.bind(UnixDomainSocketAddress.of(socketPath));
+    }
+
+    /**
+     * Warm up the transformation with a sample model and start accepting connections
+     */
+    public void start() {
+        long start = System.currentTimeMillis();
+        TransformationServer.warmUp(sysML2PetriNet);
+        // A platform thread, so the JVM keeps running while the server does
+        Thread.ofPlatform().name("socket-accept").start(this::accept);
+        logger.info("Listening on {} after {} ms warm-up", socketPath, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @param resultCache Cache answering repeated models without transforming them, or null
+     */
+    public void setResultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    private void accept() {
+        try {
+            while (true) {
+                SocketChannel channel = serverChannel.accept();
+                executor.execute(() -> serve(channel));
+            }
+        } catch (ClosedChannelException e) {
+            // Server closed
+        } catch (IOException e) {
+            logger.error("Failed to accept connections on {}", socketPath, e);
+        }
+    }
+
+    private void serve(SocketChannel channel) {
+        Semaphore pipelined = new Semaphore(MAX_PIPELINED);
+        Lock writeLock = new ReentrantLock();
+        try (channel) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length < REQUEST_HEADER_BYTES || length > MAX_FRAME_BYTES) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                int id = in.readInt();
+                int target = in.readUnsignedByte();
+                int timeoutMillis = in.readInt();
+                byte[] model = new byte[length - REQUEST_HEADER_BYTES];
+                in.readFully(model);
+                // Stop reading while too many requests are in progress, the client blocks on its writes then
+                pipelined.acquire();
+                executor.execute(() -> {
+                    try {
+                        respond(channel, writeLock, id, target, timeoutMillis, model);
+                    } finally {
+                        pipelined.release();
+                    }
+                });
+            }
+            // Answer the requests in progress before closing
+            pipelined.acquire(MAX_PIPELINED);
+        } catch (IOException e) {
+            logger.warn("Closing connection after protocol error", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void respond(SocketChannel channel, Lock writeLock, int id, int target, int timeoutMillis, byte[] model) {
+        long start = System.currentTimeMillis();
+        if (target >= OutputTarget.values().length) {
+            send(channel, writeLock, id, INVALID, ("Unknown target " + target).getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        OutputTarget outputTarget = OutputTarget.values()[target];
+        String text = new String(model, StandardCharsets.UTF_8);
+        String key = ResultCache.key(text, outputTarget);
+        if (resultCache != null) {
+            ResultCache.Entry cached = resultCache.get(key);
+            if (cached != null) {
+                metrics.cached(System.currentTimeMillis() - start);
+                send(channel, writeLock, id, OK, cached.getOutput());
+                return;
+            }
+        }
+
+        Duration timeout = timeoutMillis > 0 ? Duration.ofMillis(timeoutMillis) : DEFAULT_TIMEOUT;
+        try {
+            ResultCache.Entry result = flights.run(key, () -> transform(text, outputTarget, timeout, key, start));
+            send(channel, writeLock, id, OK, result.getOutput());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TimeoutException) {
+                send(channel, writeLock, id, TIMED_OUT, String.valueOf(cause.getMessage()).getBytes(StandardCharsets.UTF_8));
+            } else if (TransformationServer.isModelError(cause)) {
+                send(channel, writeLock, id, INVALID, String.valueOf(cause.getMessage()).getBytes(StandardCharsets.UTF_8));
+            } else {
+                logger.error("Transformation of request {} failed", id, cause);
+                send(channel, writeLock, id, FAILED, String.valueOf(cause).getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (InterruptedException e) {
+            // Answer first, writing from an interrupted thread would close the channel
+            send(channel, writeLock, id, FAILED, "Server shutting down".getBytes(StandardCharsets.UTF_8));
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("Transformation of request {} failed", id, e);
+            send(channel, writeLock, id, FAILED, String.valueOf(e).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Transform a model on a worker, only called by the first of concurrent requests with the same model and target
+     */
+    private ResultCache.Entry transform(String text, OutputTarget target, Duration timeout, String key, long start) throws ExecutionException, InterruptedException {
+        metrics.enqueue(Integer.MAX_VALUE);
+        try {
+            workers.acquire();
+        } catch (InterruptedException e) {
+            metrics.abandoned();
+            throw e;
+        }
+        metrics.started();
+        ServerMetrics.Outcome outcome = ServerMetrics.Outcome.FAILED;
+        CompletableFuture<PetriNet> future = null;
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            // A timed out transformation keeps its worker until its thread reaches the next check and ends
+            future = sysML2PetriNet.transformTextAsync(text, target, out, timeout, workers::release);
+            PetriNet petriNet = future.get();
+            outcome = ServerMetrics.Outcome.SUCCEEDED;
+            ResultCache.Entry result = new ResultCache.Entry(petriNet, out.toByteArray());
+            if (resultCache != null) {
+                resultCache.put(key, result);
+            }
+            return result;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                outcome = ServerMetrics.Outcome.TIMED_OUT;
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } finally {
+            if (future == null) {
+                workers.release();
+            }
+            metrics.finished(outcome, System.currentTimeMillis() - start);
+        }
+    }
+
+    private static void send(SocketChannel channel, Lock writeLock, int id, byte status, byte[] payload) {
+        ByteBuffer frame = ByteBuffer.allocate(4 + RESPONSE_HEADER_BYTES + payload.length);
+        frame.putInt(RESPONSE_HEADER_BYTES + payload.length).putInt(id).put(status).put(payload).flip();
+        writeLock.lock();
+        try {
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not send the response to request {}", id, e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Stop accepting connections and remove the socket file
+     */
+    @Override
+    public void close() throws IOException {
+        serverChannel.close();
+        executor.shutdown();
+        Files.deleteIfExists(socketPath);
+    }
+
+    /**
+     * @param args Optionally the path of the socket, default <code>sysml2petrinet.sock</code> in the temporary directory
+     */
+    public static void main(String[] args) {
+        try {
+            Path socketPath = args.length > 0 ? Path.of(args[0]) : Path.of(System.getProperty("java.io.tmpdir"), "sysml2petrinet.sock");
+            SysML2PetriNet sysML2PetriNet = new SysML2PetriNet();
+            SocketServer server = new SocketServer(sysML2PetriNet, socketPath, Runtime.getRuntime().availableProcessors());
+            server.setResultCache(new ResultCache(ResultCache.DEFAULT_MAX_BYTES, true));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    server.close();
+                } catch (IOException e) {
+                    logger.warn("Could not remove {}", socketPath, e);
+                }
+            }));
+            server.start();
+        } catch (Exception e) {
+            logger.error("Could not start the server", e);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package nl.utwente.sysml2petrinet.server;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import nl.utwente.sysml2petrinet.OutputTarget;
+import nl.utwente.sysml2petrinet.PetriNet.PetriNet;
+import nl.utwente.sysml2petrinet.SysML2PetriNet;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Daemon keeping a warm {@link SysML2PetriNet} resident, so a transformation costs milliseconds instead of the
+ * seconds of a cold start. Built on the JDK's HttpServer and bound to the loopback interface:
+ * <ul>
+ *     <li><code>POST /transform?target=ISO_PNML&amp;timeout=30000</code> with the SysML source as body returns the
+ *     model in the {@link OutputTarget} (default ISO_PNML), 400 if the model is invalid, 500 if the transformation
+ *     failed for another reason, 503 if the queue is full or the server is shutting down and 504 if the
+ *     transformation timed out (in milliseconds, default 30 s)</li>
+ *     <li><code>GET /metrics</code> returns the {@link ServerMetrics} as JSON, with the counters of the
+ *     {@link ResultCache} under <code>cache</code> if set</li>
+ *     <li><code>GET /health</code> returns 200 once the server is warm</li>
+ * </ul>
+ * Requests are accepted on virtual threads; at most <code>workers</code> transform at the same time and at most
+ * <code>queueCapacity</code> wait for them. Requests for a model and target that are already being transformed wait
+ * for that transformation and share its output instead of taking a worker; they are counted under
+ * <code>coalesced</code> only, and share its timeout and outcome.
+ */
+public class TransformationServer implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(TransformationServer.class);
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+    private static final int MAX_BODY_BYTES = 16 << 20;
+    private static final String WARM_UP_MODEL = "/model/example.sysml";
+
+    private final SysML2PetriNet sysML2PetriNet;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore workers;
+    private final int queueCapacity;
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final SingleFlight<String, ResultCache.Entry> flights = new SingleFlight<>();
+    private ResultCache resultCache;
+
+    /**
+     * @param sysML2PetriNet Transformation to keep resident
+     * @param port           Port on the loopback interface, 0 for any free port
+     * @param workers        Maximum number of concurrent transformations
+     * @param queueCapacity  Maximum number of requests waiting for a transformation
+     * @throws IOException Port could not be bound
+     */
+    public TransformationServer(SysML2PetriNet sysML2PetriNet, int port, int workers, int queueCapacity) throws IOException {
+        this.sysML2PetriNet = sysML2PetriNet;
+        this.workers = new Semaphore(Math.max(1, workers));
+        this.queueCapacity = queueCapacity;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(executor);
+        server.createContext("/transform", this::handleTransform);
+        server.createContext("/metrics", this::handleMetrics);
+        server.createContext("/health", exchange -> respond(exchange, 200, "text/plain", "OK".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Warm up the transformation with a sample model and start accepting requests
+     */
+    public void start() {
+        long start = System.currentTimeMillis();
+        warmUp(sysML2PetriNet);
+        server.start();
+        logger.info("Listening on {} after {} ms warm-up", server.getAddress(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Transform a sample model, loading the library and classes the first request would otherwise wait for
+     *
+     * @param sysML2PetriNet Transformation to warm up
+     */
+    static void warmUp(SysML2PetriNet sysML2PetriNet) {
+        try (InputStream in = TransformationServer.class.getResourceAsStream(WARM_UP_MODEL)) {
+            if (in != null) {
+                sysML2PetriNet.transformText(new String(in.readAllBytes(), StandardCharsets.UTF_8), OutputStream.nullOutputStream(), true);
+            }
+        } catch (Exception e) {
+            // Only costs the first request its warm-up
+            logger.warn("Warm-up failed", e);
+        }
+    }
+
+    /**
+     * @param resultCache Cache answering repeated models without transforming them, or null
+     */
+    public void setResultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return Number of requests that shared the transformation of a concurrent request
+     */
+    public long getCoalesced() {
+        return flights.getCoalesced();
+    }
+
+    private void handleTransform(HttpExchange exchange) throws IOException {
+        long start = System.currentTimeMillis();
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, "text/plain", "Use POST".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        OutputTarget target;
+        Duration timeout;
+        byte[] body;
+        try {
+            target = OutputTarget.valueOf(query.getOrDefault("target", OutputTarget.ISO_PNML.name()).toUpperCase(Locale.ROOT));
+            timeout = query.containsKey("timeout") ? Duration.ofMillis(Long.parseLong(query.get("timeout"))) : DEFAULT_TIMEOUT;
+            body = exchange.getRequestBody().readNBytes(MAX_BODY_BYTES + 1);
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, "text/plain", String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        if (body.length > MAX_BODY_BYTES) {
+            respond(exchange, 413, "text/plain", "Model too large".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+
+        String text = new String(body, StandardCharsets.UTF_8);
+        String key = ResultCache.key(text, target);
+        if (resultCache != null) {
+            ResultCache.Entry cached = resultCache.get(key);
+            if (cached != null) {
+                metrics.cached(System.currentTimeMillis() - start);
+                respond(exchange, 200, "application/xml", cached.getOutput());
+                return;
+            }
+        }
+
+        ResultCache.Entry result;
+        try {
+            result = flights.run(key, () -> transform(text, target, timeout, key, start));
+        } catch (RejectedExecutionException e) {
+            respond(exchange, 503, "text/plain", "Queue full".getBytes(StandardCharsets.UTF_8));
+            return;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                respond(exchange, 504, "text/plain", ("Timed out after " + timeout.toMillis() + " ms").getBytes(StandardCharsets.UTF_8));
+            } else if (isModelError(e.getCause())) {
+                respond(exchange, 400, "text/plain", String.valueOf(e.getCause().getMessage()).getBytes(StandardCharsets.UTF_8));
+            } else {
+                logger.error("Transformation failed", e.getCause());
+                respond(exchange, 500, "text/plain", String.valueOf(e.getCause()).getBytes(StandardCharsets.UTF_8));
+            }
+            return;
+        } catch (InterruptedException e) {
+            // Answer first, writing from an interrupted thread would close the connection
+            respond(exchange, 503, "text/plain", "Server shutting down".getBytes(StandardCharsets.UTF_8));
+            Thread.currentThread().interrupt();
+            return;
+        } catch (Exception e) {
+            logger.error("Transformation failed", e);
+            respond(exchange, 500, "text/plain", String.valueOf(e).getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        respond(exchange, 200, "application/xml", result.getOutput());
+    }
+
+    /**
+     * @param e Failure of a transformation
+     * @return true if the model is at fault: the transformation reports invalid models with checked exceptions, while
+     * IO errors, runtime exceptions, errors and interruptions are failures of the server
+     */
+    static boolean isModelError(Throwable e) {
+        return e instanceof Exception && !(e instanceof RuntimeException) && !(e instanceof IOException)
+                && !(e instanceof InterruptedException);
+    }
+
+    /**
+     * Transform a model on a worker, only called by the first of concurrent requests with the same model and target
+     */
+    private ResultCache.Entry transform(String text, OutputTarget target, Duration timeout, String key, long start) throws ExecutionException, InterruptedException {
+        if (!metrics.enqueue(queueCapacity)) {
+            throw new RejectedExecutionException("Queue full");
+        }
+        try {
+            workers.acquire();
+        } catch (InterruptedException e) {
+            metrics.abandoned();
+            throw e;
+        }
+        metrics.started();
+        ServerMetrics.Outcome outcome = ServerMetrics.Outcome.FAILED;
+        CompletableFuture<PetriNet> future = null;
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            // A timed out transformation keeps its worker until its thread reaches the next check and ends
+            future = sysML2PetriNet.transformTextAsync(text, target, out, timeout, workers::release);
+            PetriNet petriNet = future.get();
+            outcome = ServerMetrics.Outcome.SUCCEEDED;
+            ResultCache.Entry result = new ResultCache.Entry(petriNet, out.toByteArray());
+            if (resultCache != null) {
+                resultCache.put(key, result);
+            }
+            return result;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                outcome = ServerMetrics.Outcome.TIMED_OUT;
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } finally {
+            if (future == null) {
+                workers.release();
+            }
+            metrics.finished(outcome, System.currentTimeMillis() - start);
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        JsonObject counters = gson.toJsonTree(metrics.snapshot()).getAsJsonObject();
+        counters.addProperty("coalesced", flights.getCoalesced());
+        if (resultCache != null) {
+            counters.add("cache", gson.toJsonTree(resultCache.stats()));
+        }
+        String json = gson.toJson(counters);
+        respond(exchange, 200, "application/json", json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length > 0 ? body.length : -1);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null) {
+            return parameters;
+        }
+        for (String parameter : query.split("&")) {
+            int eq = parameter.indexOf('=');
+            if (eq > 0) {
+                parameters.put(URLDecoder.decode(parameter.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(parameter.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Stop accepting requests, the requests in progress are given a second to complete
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    /**
+     * @param args Optionally the port, default 8080
+     */
+    public static void main(String[] args) {
+        try {
+            int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+            int workers = Runtime.getRuntime().availableProcessors();
+            TransformationServer server = new TransformationServer(new SysML2PetriNet(), port, workers, 4 * workers);
+            server.setResultCache(new ResultCache(ResultCache.DEFAULT_MAX_BYTES, true));
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+            server.start();
+        } catch (Exception e) {
+            logger.error("Could not start the server", e);
+            System.exit(1);
+        }
+    }
+}
@@ -2,8 +2,11 @@ package nl.utwente.sysml2petrinet;
 
 import nl.utwente.sysml2petrinet.PetriNet.Node;
 import nl.utwente.sysml2petrinet.PetriNet.Arc;
+import org.eclipse.emf.common.util.BasicMonitor;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
@@ -13,12 +16,21 @@ import javax.xml.transform.Source;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.time.Duration;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 import static org.junit.Assert.*;
 import org.xml.sax.EntityResolver;
 import org.xml.sax.InputSource;
@@ -30,6 +42,9 @@ import org.xml.sax.InputSource;
 @RunWith(JUnit4.class)
 public class SysML2PetriNetTest {
 
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
     private SysML2PetriNet transformer;
     private static final String MODEL_DIR = "src/main/resources/model";
     private static final String OUTPUT_DIR = "src/main/resources/model/output";
@@ -179,6 +194,71 @@ public class SysML2PetriNetTest {
 
     }
 
+    /**
+     * Test that one transformation writes every output target, with the same PNML as separate transformations
+     */
+    @Test
+    public void testMultipleOutputTargets() throws Exception {
+        String modelPath = MODEL_DIR + "/shop.sysml";
+        Path outputDir = temp.newFolder("targets").toPath();
+        Path singleDir = temp.newFolder("single").toPath();
+
+        List<File> files = transformer.transform(modelPath, outputDir.toString(), EnumSet.allOf(OutputTarget.class));
+        transformer.transform(modelPath, null, singleDir + "/", true, true);
+
+        assertEquals(4, files.size());
+        for (File file : files) {
+            assertTrue(file + " should be generated", file.exists());
+        }
+        assertArrayEquals(Files.readAllBytes(singleDir.resolve("shop.pnml")), Files.readAllBytes(outputDir.resolve("shop.pnml")));
+        validatePNMLFile(outputDir.resolve("shop.legacy.pnml").toString());
+        validatePNMLFile(outputDir.resolve("shop.acceleo.pnml").toString());
+        assertTrue(Files.exists(outputDir.resolve("shop.xmi")));
+    }
+
+    /**
+     * Test that SysML source given as text or stream is transformed to the same PNML as the file
+     */
+    @Test
+    public void testInMemoryTransformation() throws Exception {
+        String modelPath = MODEL_DIR + "/shop.sysml";
+        Path outputDir = temp.newFolder("file").toPath();
+        transformer.transform(modelPath, null, outputDir + "/", true, true);
+        byte[] expected = Files.readAllBytes(outputDir.resolve("shop.pnml"));
+
+        ByteArrayOutputStream fromText = new ByteArrayOutputStream();
+        var petriNet = transformer.transformText(Files.readString(Path.of(modelPath)), fromText, true);
+        ByteArrayOutputStream fromStream = new ByteArrayOutputStream();
+        try (InputStream in = new FileInputStream(modelPath)) {
+            transformer.transform(in, fromStream, true);
+        }
+
+        assertEquals(transformer.getPetriNet().getNodes().size(), petriNet.getNodes().size());
+        assertArrayEquals(expected, fromText.toByteArray());
+        assertArrayEquals(expected, fromStream.toByteArray());
+    }
+
+    /**
+     * Test that an asynchronous transformation completes, and that a cancelled one stops and fails
+     */
+    @Test
+    public void testAsyncTransformation() throws Exception {
+        String modelPath = MODEL_DIR + "/shop.sysml";
+        Path outputDir = temp.newFolder("async").toPath();
+
+        var petriNet = transformer.transformAsync(modelPath, null, outputDir + "/", true, true, Duration.ofMinutes(5)).get();
+        assertFalse(petriNet.getNodes().isEmpty());
+        assertTrue(Files.exists(outputDir.resolve("shop.pnml")));
+
+        var timedOut = transformer.transformAsync(modelPath, null, outputDir + "/", true, true, Duration.ZERO);
+        var exception = assertThrows(ExecutionException.class, timedOut::get);
+        assertTrue(exception.getCause() instanceof TimeoutException);
+
+        BasicMonitor monitor = new BasicMonitor();
+        monitor.setCanceled(true);
+        assertThrows(CancellationException.class, () -> transformer.toPetriNet(transformer.parse(modelPath), monitor));
+    }
+
     /**
      * Custom EntityResolver to redirect remote anyElement.rng to local file
      */
@@ -255,6 +335,28 @@ public class SysML2PetriNetTest {
         System.out.println("PNML file " + pnmlFilePath + " is valid according to PTNet RNG schema (alternative method)");
     }
 
+    /**
+     * Test that a parallel batch produces the same PNML files as a sequential one
+     */
+    @Test
+    public void testParallelTransformMultiple() throws Exception {
+        Path inputDir = temp.newFolder("models").toPath();
+        Path sequentialDir = temp.newFolder("sequential").toPath();
+        Path parallelDir = temp.newFolder("parallel").toPath();
+        for (String modelFile : validModels) {
+            Files.copy(Path.of(MODEL_DIR, modelFile), inputDir.resolve(modelFile));
+        }
+
+        transformer.transformMultiple(inputDir.toString(), sequentialDir + "/", true, true, 1);
+        transformer.transformMultiple(inputDir.toString(), parallelDir + "/", true, true, 4);
+
+        for (String modelFile : validModels) {
+            String pnml = modelFile.replace(".sysml", ".pnml");
+            assertEquals("Parallel output should match sequential output for " + modelFile,
+                    Files.readString(sequentialDir.resolve(pnml)), Files.readString(parallelDir.resolve(pnml)));
+        }
+    }
+
     /**
      * Test that PTNet RNG schema can be loaded properly
      */
@@ -1,5 +1,8 @@
 package nl.utwente.sysml2petrinet;
 
+import nl.utwente.sysml2petrinet.batch.BatchPipelineTest;
+import nl.utwente.sysml2petrinet.library.LibraryPackageIndexTest;
+import nl.utwente.sysml2petrinet.server.TransformationServerTest;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
@@ -10,7 +13,11 @@ import org.junit.runners.Suite.SuiteClasses;
  */
 @RunWith(Suite.class)
 @SuiteClasses({
-    SysML2PetriNetTest.class
+    SysML2PetriNetTest.class,
+    SysMLProcessorTest.class,
+    LibraryPackageIndexTest.class,
+    BatchPipelineTest.class,
+    TransformationServerTest.class
 })
 public class SysML2PetriNetTestSuite {
     // This class serves as a test suite container
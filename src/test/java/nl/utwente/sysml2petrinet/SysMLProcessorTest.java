@@ -0,0 +1,237 @@
+package nl.utwente.sysml2petrinet;
+
+import nl.utwente.sysml2petrinet.PetriNet.Node;
+import nl.utwente.sysml2petrinet.PetriNet.PetriNet;
+import nl.utwente.sysml2petrinet.library.LibraryOptions;
+import nl.utwente.sysml2petrinet.library.SharedLibrary;
+import nl.utwente.sysml2petrinet.m2m.Transformer;
+import nl.utwente.sysml2petrinet.m2t_direct.TransformerPNML;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.omg.sysml.lang.sysml.Namespace;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the different ways SysMLProcessor loads the library and processes models
+ */
+@RunWith(JUnit4.class)
+public class SysMLProcessorTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private static final String LIBRARY_DIR = "src/main/resources/sysml.library";
+    private static final String MODEL_DIR = "src/main/resources/model/";
+    private static final String MODEL_PATH = MODEL_DIR + "controlNodeAll.sysml";
+    private static final List<String> VALID_MODELS = List.of("controlNodeAll.sysml", "controlNodeDecisionMerge.sysml",
+            "controlNodeForkJoin.sysml", "ControlNodeDecisionIfElse.sysml", "nestedControlNode.sysml", "shop.sysml",
+            "example.sysml");
+
+    /**
+     * Test that parsing the library in parallel yields the same transformation result as parsing it sequentially
+     */
+    @Test
+    public void testParallelLoadingMatchesSequential() throws Exception {
+        LibraryOptions sequential = new LibraryOptions();
+        sequential.setShared(false);
+        LibraryOptions parallel = new LibraryOptions();
+        parallel.setShared(false);
+        parallel.setParallelism(4);
+
+        PetriNet expected = transform(new SysMLProcessor(LIBRARY_DIR, sequential));
+        PetriNet actual = transform(new SysMLProcessor(LIBRARY_DIR, parallel));
+
+        assertEquals(nodeNames(expected), nodeNames(actual));
+        assertEquals(expected.getArcs().size(), actual.getArcs().size());
+    }
+
+    /**
+     * Test that models linked against a compacted library, without node models, give the same PNML as against the
+     * parsed library
+     */
+    @Test
+    public void testCompactLibraryMatchesParsed() throws Exception {
+        LibraryOptions parsed = new LibraryOptions();
+        parsed.setShared(false);
+        LibraryOptions compact = new LibraryOptions();
+        compact.setShared(false);
+        compact.setDiscardNodeModels(true);
+        SysMLProcessor parsedProcessor = new SysMLProcessor(LIBRARY_DIR, parsed);
+        SysMLProcessor compactProcessor = new SysMLProcessor(LIBRARY_DIR, compact);
+
+        for (String model : VALID_MODELS) {
+            assertEquals(model, pnml(transform(parsedProcessor, MODEL_DIR + model), model),
+                    pnml(transform(compactProcessor, MODEL_DIR + model), model));
+        }
+    }
+
+    /**
+     * Test that one processor parses models concurrently with the same result as sequentially
+     */
+    @Test
+    public void testConcurrentProcessing() throws Exception {
+        SysMLProcessor processor = new SysMLProcessor(LIBRARY_DIR);
+        List<String> expected = nodeNames(transform(processor));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<PetriNet>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> transform(processor)));
+            }
+            for (Future<PetriNet> result : results) {
+                assertEquals(expected, nodeNames(result.get()));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Test that different models linked and transformed concurrently against one library give the same results as
+     * sequentially, several times each and in an interleaved order
+     */
+    @Test
+    public void testConcurrentDifferentModels() throws Exception {
+        SysMLProcessor processor = new SysMLProcessor(LIBRARY_DIR);
+        Map<String, PetriNet> expected = new HashMap<>();
+        for (String model : VALID_MODELS) {
+            expected.put(model, transform(processor, MODEL_DIR + model));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Map<Future<PetriNet>, String> results = new LinkedHashMap<>();
+            for (int round = 0; round < 4; round++) {
+                for (String model : VALID_MODELS) {
+                    results.put(executor.submit(() -> transform(processor, MODEL_DIR + model)), model);
+                }
+            }
+            for (Map.Entry<Future<PetriNet>, String> result : results.entrySet()) {
+                PetriNet actual = result.getKey().get();
+                assertEquals(result.getValue(), nodeNames(expected.get(result.getValue())), nodeNames(actual));
+                assertEquals(result.getValue(), expected.get(result.getValue()).getArcs().size(), actual.getArcs().size());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Test that further processors reuse the library loaded by the first one
+     */
+    @Test
+    public void testProcessorsShareLibrary() {
+        SysMLProcessor first = new SysMLProcessor(LIBRARY_DIR);
+        SysMLProcessor processor = new SysMLProcessor(LIBRARY_DIR);
+        assertSame("A second processor should not reload the library", first.getLibrary(), processor.getLibrary());
+        assertNotNull(processor.processSysMLFile(MODEL_PATH));
+    }
+
+    /**
+     * Test that processors asking for a differently loaded library do not get the one loaded first
+     */
+    @Test
+    public void testProcessorsWithOtherOptionsDoNotShareLibrary() {
+        LibraryOptions plain = new LibraryOptions();
+        plain.setLazy(true);
+        LibraryOptions compact = new LibraryOptions();
+        compact.setLazy(true);
+        compact.setDiscardNodeModels(true);
+        LibraryOptions snapshot = new LibraryOptions();
+        snapshot.setLazy(true);
+        snapshot.setSnapshotDir("target/other.snapshot");
+
+        SharedLibrary library = new SysMLProcessor(LIBRARY_DIR, plain).getLibrary();
+        assertSame(library, new SysMLProcessor(LIBRARY_DIR, plain).getLibrary());
+        assertNotSame(library, new SysMLProcessor(LIBRARY_DIR, compact).getLibrary());
+        assertNotSame(library, new SysMLProcessor(LIBRARY_DIR, snapshot).getLibrary());
+    }
+
+    /**
+     * Test that a library that cannot be loaded fails the processor and is not kept for later processors
+     */
+    @Test
+    public void testFailedLibraryIsNotShared() throws Exception {
+        String emptyDir = temp.newFolder("library").getPath();
+        assertThrows(IllegalStateException.class, () -> new SysMLProcessor(emptyDir));
+        assertThrows(IllegalStateException.class, () -> new SysMLProcessor(emptyDir));
+    }
+
+    /**
+     * Test that the model cache returns unchanged models and reloads changed ones, and that release unloads models
+     */
+    @Test
+    public void testModelCacheAndRelease() throws Exception {
+        SysMLProcessor processor = new SysMLProcessor(LIBRARY_DIR);
+        Path copy = Files.createTempFile("model", ".sysml");
+        try {
+            Files.copy(Path.of(MODEL_PATH), copy, StandardCopyOption.REPLACE_EXISTING);
+            Namespace uncached = processor.processSysMLFile(copy.toString());
+            assertNotNull(uncached);
+            processor.release(uncached);
+            assertNull("Released model should be unloaded", uncached.eResource());
+
+            processor.setModelCacheSize(1);
+            Namespace first = processor.processSysMLFile(copy.toString());
+            processor.release(first);
+            Namespace again = processor.processSysMLFile(copy.toString());
+            assertSame("Unchanged model should come from the cache", first, again);
+
+            Files.writeString(copy, Files.readString(copy) + "\n", StandardOpenOption.TRUNCATE_EXISTING);
+            Namespace reloaded = processor.processSysMLFile(copy.toString());
+            assertNotNull(reloaded);
+            assertNotSame("Changed model should be parsed again", first, reloaded);
+            assertNotNull("Stale model should stay loaded while it is held", first.eResource());
+            processor.release(again);
+            assertNull("Stale model should be unloaded once released", first.eResource());
+            processor.release(reloaded);
+            assertNotNull("Cached model should stay loaded after release", reloaded.eResource());
+        } finally {
+            Files.deleteIfExists(copy);
+        }
+    }
+
+    private static PetriNet transform(SysMLProcessor processor) throws Exception {
+        return transform(processor, MODEL_PATH);
+    }
+
+    private static PetriNet transform(SysMLProcessor processor, String modelPath) throws Exception {
+        Namespace root = processor.processSysMLFile(modelPath);
+        assertNotNull("Model should be processed", root);
+        try {
+            return new Transformer(root).transform();
+        } finally {
+            processor.release(root);
+        }
+    }
+
+    private static String pnml(PetriNet petriNet, String name) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TransformerPNML(petriNet, name).writePNML(out, true);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> nodeNames(PetriNet petriNet) {
+        return petriNet.getNodes().stream().map(Node::getName).sorted().toList();
+    }
+}
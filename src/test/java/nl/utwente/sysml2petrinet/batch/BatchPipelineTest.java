@@ -0,0 +1,337 @@
+package nl.utwente.sysml2petrinet.batch;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import nl.utwente.sysml2petrinet.SysML2PetriNet;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the batch transformation
+ */
+@RunWith(JUnit4.class)
+public class BatchPipelineTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private static final String MODEL_DIR = "src/main/resources/model";
+    private static SysML2PetriNet sysML2PetriNet;
+
+    @BeforeClass
+    public static void setUp() {
+        sysML2PetriNet = new SysML2PetriNet();
+    }
+
+    /**
+     * Test that the pipeline exports valid models and reports the model that failed
+     */
+    @Test
+    public void testPipelineReportsFailedModel() throws Exception {
+        String outputDir = temp.newFolder("pipeline").getPath() + File.separator;
+        BatchOptions options = new BatchOptions();
+        options.setWorkers(2);
+        List<BatchItem> items = List.of(
+                new BatchItem(new File(MODEL_DIR, "controlNodeAll.sysml"), outputDir),
+                new BatchItem(new File(MODEL_DIR, "errorModel.sysml"), outputDir));
+
+        List<BatchItem> result = new BatchPipeline(sysML2PetriNet, options).run(items.iterator());
+
+        assertEquals(2, result.size());
+        assertFalse(result.get(0).isFailed());
+        assertNotNull(result.get(0).getPetriNet());
+        assertTrue(Files.exists(Path.of(outputDir, "controlNodeAll.pnml")));
+        assertTrue("Error model should fail", result.get(1).isFailed());
+    }
+
+    /**
+     * Test that a second run restores unchanged models from the build cache with identical outputs
+     */
+    @Test
+    public void testBuildCacheRestoresOutputs() throws Exception {
+        BatchOptions options = new BatchOptions();
+        options.setCacheDir(temp.newFolder("cache").getPath());
+        String firstDir = temp.newFolder("first").getPath() + File.separator;
+        String secondDir = temp.newFolder("second").getPath() + File.separator;
+        File model = new File(MODEL_DIR, "shop.sysml");
+
+        BatchItem first = new BatchPipeline(sysML2PetriNet, options).run(List.of(new BatchItem(model, firstDir)).iterator()).getFirst();
+        BatchItem second = new BatchPipeline(sysML2PetriNet, options).run(List.of(new BatchItem(model, secondDir)).iterator()).getFirst();
+
+        assertFalse(first.isCached());
+        assertTrue("Unchanged model should come from the cache", second.isCached());
+        assertEquals(Files.readString(Path.of(firstDir, "shop.pnml")), Files.readString(Path.of(secondDir, "shop.pnml")));
+    }
+
+    /**
+     * Test that entries that were not used for a while are deleted and used ones are kept
+     */
+    @Test
+    public void testBuildCacheDeletesUnusedEntries() throws Exception {
+        Path dir = temp.newFolder("cache").toPath();
+        BuildCache cache = new BuildCache(dir.toFile(), "library");
+        Path output = Files.writeString(temp.newFolder("outputs").toPath().resolve("model.pnml"), "<pnml/>");
+        String unused = cache.key("a.sysml", new byte[]{1}, true, false);
+        String used = cache.key("b.sysml", new byte[]{2}, true, false);
+        cache.store(unused, List.of(output.toFile()));
+        cache.store(used, List.of(output.toFile()));
+        Path unrelated = Files.createDirectories(dir.resolve("notes"));
+        long old = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2);
+        for (String key : List.of(unused, used)) {
+            assertTrue(dir.resolve(key.substring(0, 2)).resolve(key).toFile().setLastModified(old));
+        }
+        cache.restore(used, temp.newFolder("restored").getPath() + File.separator);
+
+        assertEquals(1, cache.deleteUnused(TimeUnit.DAYS.toMillis(1)));
+        assertFalse(cache.contains(unused));
+        assertTrue(cache.contains(used));
+        assertEquals(1, cache.clear());
+        assertFalse(cache.contains(used));
+        assertTrue(Files.isDirectory(unrelated));
+    }
+
+    /**
+     * Test that without fail-fast a failing model does not stop the batch and that the report lists every model
+     */
+    @Test
+    public void testFailureIsolationAndReport() throws Exception {
+        String outputDir = temp.newFolder("isolated").getPath() + File.separator;
+        Path report = Path.of(outputDir, "report.json");
+        BatchOptions options = new BatchOptions();
+        options.setWorkers(1);
+        options.setFailFast(false);
+        options.setReportFile(report.toString());
+        List<BatchItem> items = List.of(
+                new BatchItem(new File(MODEL_DIR, "errorModel.sysml"), outputDir),
+                new BatchItem(new File(MODEL_DIR, "controlNodeAll.sysml"), outputDir));
+
+        List<BatchItem> result = new BatchPipeline(sysML2PetriNet, options).run(items.iterator());
+
+        assertTrue(result.get(0).isFailed());
+        assertFalse("Batch should go on after a failure", result.get(1).isFailed());
+        JsonObject json = JsonParser.parseString(Files.readString(report)).getAsJsonObject();
+        assertEquals(2, json.get("files").getAsInt());
+        assertEquals(1, json.get("failed").getAsInt());
+        JsonObject model = json.getAsJsonArray("models").get(1).getAsJsonObject();
+        assertEquals("OK", model.get("status").getAsString());
+        assertEquals(result.get(1).getNodeCount(), model.get("nodes").getAsInt());
+        assertTrue(model.has("parseMillis"));
+    }
+
+    /**
+     * Test that a batch whose items break off fails instead of looking complete
+     */
+    @Test
+    public void testFailingItemsFailTheRun() throws Exception {
+        String outputDir = temp.newFolder("broken").getPath() + File.separator;
+        Iterator<BatchItem> items = new Iterator<>() {
+            private boolean taken;
+
+            @Override
+            public boolean hasNext() {
+                if (taken) {
+                    throw new UncheckedIOException(new IOException("Walk broke off"));
+                }
+                return true;
+            }
+
+            @Override
+            public BatchItem next() {
+                taken = true;
+                return new BatchItem(new File(MODEL_DIR, "controlNodeAll.sysml"), outputDir);
+            }
+        };
+
+        IOException e = assertThrows(IOException.class, () -> new BatchPipeline(sysML2PetriNet, new BatchOptions()).run(items));
+        assertTrue(e.getCause() instanceof UncheckedIOException);
+    }
+
+    /**
+     * Test that a model over budget is admitted when nothing else is loaded, and that the next one waits for it
+     */
+    @Test
+    public void testAdmissionControlHoldsBackModels() throws Exception {
+        File model = new File(MODEL_DIR, "shop.sysml");
+        AdmissionControl admission = new AdmissionControl(1);
+        long reserved = admission.admit(model);
+
+        Thread waiting = new Thread(() -> {
+            try {
+                admission.release(admission.admit(model));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiting.start();
+        waiting.join(500);
+        assertTrue("Second model should wait for the first", waiting.isAlive());
+
+        admission.release(reserved);
+        waiting.join(5000);
+        assertFalse("Second model should be admitted once memory is released", waiting.isAlive());
+    }
+
+    /**
+     * Test that a batch completes with a heap budget smaller than any model
+     */
+    @Test
+    public void testPipelineWithHeapBudget() throws Exception {
+        String outputDir = temp.newFolder("budget").getPath() + File.separator;
+        BatchOptions options = new BatchOptions();
+        options.setWorkers(2);
+        options.setHeapBudget(1);
+        List<BatchItem> items = List.of(
+                new BatchItem(new File(MODEL_DIR, "controlNodeAll.sysml"), outputDir),
+                new BatchItem(new File(MODEL_DIR, "shop.sysml"), outputDir));
+
+        for (BatchItem item : new BatchPipeline(sysML2PetriNet, options).run(items.iterator())) {
+            assertFalse(item.isFailed());
+        }
+    }
+
+    /**
+     * Test that a recursive batch finds the models matching the glob in all subdirectories and mirrors the tree
+     */
+    @Test
+    public void testRecursiveDiscoveryMirrorsTree() throws Exception {
+        Path inputDir = temp.newFolder("tree").toPath();
+        Path outputDir = temp.newFolder("mirror").toPath();
+        Files.createDirectories(inputDir.resolve("a/b"));
+        Files.copy(Path.of(MODEL_DIR, "shop.sysml"), inputDir.resolve("shop.sysml"));
+        Files.copy(Path.of(MODEL_DIR, "example.sysml"), inputDir.resolve("a/b/example.sysml"));
+        Files.copy(Path.of(MODEL_DIR, "controlNodeAll.sysml"), inputDir.resolve("a/controlNodeAll.txt"));
+        BatchOptions options = new BatchOptions();
+        options.setRecursive(true);
+
+        List<BatchItem> result = sysML2PetriNet.transformMultiple(inputDir.toString(), outputDir.toString(), options);
+
+        assertEquals(2, result.size());
+        assertTrue(Files.exists(outputDir.resolve("shop.pnml")));
+        assertTrue(Files.exists(outputDir.resolve("a/b/example.pnml")));
+    }
+
+    /**
+     * Test that models are read from an input archive and their outputs written to an output archive, with the same
+     * PNML as a transformation to files
+     */
+    @Test
+    public void testArchiveInputAndOutput() throws Exception {
+        Path dir = temp.newFolder("archive").toPath();
+        File input = dir.resolve("models.zip").toFile();
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(input))) {
+            zip.putNextEntry(new ZipEntry("shop.sysml"));
+            zip.write(Files.readAllBytes(Path.of(MODEL_DIR, "shop.sysml")));
+            zip.putNextEntry(new ZipEntry("a/example.sysml"));
+            zip.write(Files.readAllBytes(Path.of(MODEL_DIR, "example.sysml")));
+        }
+        File output = dir.resolve("nets.zip").toFile();
+        BatchOptions options = new BatchOptions();
+        options.setRecursive(true);
+
+        List<BatchItem> result = sysML2PetriNet.transformArchive(input.getPath(), output.getPath(), options);
+
+        assertEquals(2, result.size());
+        String outputDir = dir.resolve("files") + File.separator;
+        sysML2PetriNet.transform(MODEL_DIR + "/shop.sysml", outputDir + "shop.sysml.xmi", outputDir, true, false);
+        try (ZipFile zip = new ZipFile(output)) {
+            assertNotNull(zip.getEntry("a/example.pnml"));
+            ZipEntry shop = zip.getEntry("shop.pnml");
+            assertNotNull(shop);
+            try (InputStream in = zip.getInputStream(shop)) {
+                assertArrayEquals(Files.readAllBytes(Path.of(outputDir, "shop.pnml")), in.readAllBytes());
+            }
+        }
+    }
+
+    /**
+     * Test that archive entries cannot lead outputs out of the output directory
+     */
+    @Test
+    public void testArchiveEntryNames() throws Exception {
+        assertEquals("a/b.pnml", OutputArchive.entryName("./a//b.pnml"));
+        assertThrows(IOException.class, () -> OutputArchive.entryName("../b.pnml"));
+        assertThrows(IOException.class, () -> OutputArchive.entryName("a/../../b.pnml"));
+        assertThrows(IOException.class, () -> OutputArchive.entryName("/etc/b.pnml"));
+        assertThrows(IOException.class, () -> OutputArchive.entryName("C:/b.pnml"));
+
+        Path dir = temp.newFolder("archive").toPath();
+        File input = dir.resolve("models.zip").toFile();
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(input))) {
+            zip.putNextEntry(new ZipEntry("../evil.sysml"));
+            zip.write(Files.readAllBytes(Path.of(MODEL_DIR, "shop.sysml")));
+        }
+        try (ArchiveDiscovery discovery = new ArchiveDiscovery(input.getPath(), "", "**.sysml", true)) {
+            assertTrue(discovery.hasNext());
+            BatchItem item = discovery.next();
+            assertTrue(item.isFailed());
+            assertEquals("", item.getOutputDir());
+        }
+    }
+
+    /**
+     * Test that the models claimed by a worker are only put back into the queue once the worker is gone
+     */
+    @Test
+    public void testWorkQueueRecoversCrashedWorker() throws Exception {
+        WorkQueue queue = new WorkQueue(temp.newFolder("queue"));
+        queue.add(new File(MODEL_DIR, "shop.sysml"), "out" + File.separator);
+        WorkQueue.Claims crashed = queue.claims("crashed");
+        assertTrue(crashed.hasNext());
+        crashed.next();
+        assertFalse(queue.hasPending());
+
+        assertEquals("Running worker keeps its claims", 0, queue.recover("crashed"));
+        // Ends without completing its model
+        crashed.close();
+        assertEquals(1, queue.recover("crashed"));
+
+        try (WorkQueue.Claims other = queue.claims("other")) {
+            BatchItem item = other.next();
+            assertEquals("shop.sysml", item.getInput().getName());
+            other.complete(item);
+        }
+        assertTrue(queue.isFinished());
+        assertEquals(1, queue.getResults().size());
+    }
+
+    /**
+     * Test that a batch sharded over two worker processes transforms every model and merges their results
+     */
+    @Test
+    public void testShardedBatch() throws Exception {
+        Path inputDir = temp.newFolder("shards").toPath();
+        Path outputDir = temp.newFolder("sharded").toPath();
+        Files.copy(Path.of(MODEL_DIR, "shop.sysml"), inputDir.resolve("shop.sysml"));
+        Files.copy(Path.of(MODEL_DIR, "example.sysml"), inputDir.resolve("example.sysml"));
+        Files.copy(Path.of(MODEL_DIR, "errorModel.sysml"), inputDir.resolve("errorModel.sysml"));
+        BatchOptions options = new BatchOptions();
+        options.setWorkers(1);
+
+        BatchReport report = new ShardCoordinator(2).run(inputDir.toString(), outputDir + File.separator, options);
+
+        assertEquals(3, report.getFiles());
+        assertEquals(1, report.getFailed());
+        assertTrue(Files.exists(outputDir.resolve("shop.pnml")));
+        assertTrue(Files.exists(outputDir.resolve("example.pnml")));
+    }
+}
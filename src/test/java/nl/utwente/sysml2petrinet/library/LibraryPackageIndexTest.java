@@ -0,0 +1,49 @@
+package nl.utwente.sysml2petrinet.library;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the package index used to load the SysML library lazily
+ */
+@RunWith(JUnit4.class)
+public class LibraryPackageIndexTest {
+
+    private static final String LIBRARY_DIR = "src/main/resources/sysml.library";
+    private static final String MODEL_DIR = "src/main/resources/model";
+    private LibraryPackageIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        index = new LibraryPackageIndex(new File(LIBRARY_DIR));
+    }
+
+    /**
+     * Test that packages listed with a wrong file name in .meta.json are still found by scanning
+     */
+    @Test
+    public void testIndexRecoversFromWrongMetaEntries() {
+        assertEquals("AnalysisCases.sysml", index.getFile("AnalysisCases").getName());
+        assertEquals("Actions.sysml", index.getFile("Actions").getName());
+        assertEquals("Base.kerml", index.getFile("Base").getName());
+    }
+
+    /**
+     * Test that an activity model only needs part of the library, including the transitive kernel packages
+     */
+    @Test
+    public void testResolveActivityModel() throws Exception {
+        Set<File> required = index.resolve(new File(MODEL_DIR + "/example.sysml"));
+        assertTrue(required.contains(index.getFile("Actions")));
+        assertTrue(required.contains(index.getFile("ScalarValues")));
+        assertFalse("Domain libraries should not be needed", required.contains(index.getFile("ISQ")));
+        assertTrue(required.size() < index.getPackageNames().size());
+    }
+}
@@ -0,0 +1,89 @@
+package nl.utwente.sysml2petrinet.library;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.BinaryResourceImpl;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the on-disk library snapshot
+ */
+@RunWith(JUnit4.class)
+public class LibrarySnapshotTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+    private File libraryDir;
+    private File snapshotRoot;
+
+    @Before
+    public void setUp() throws Exception {
+        libraryDir = temp.newFolder("library");
+        Files.writeString(new File(libraryDir, "Test.sysml").toPath(), "package Test;", StandardCharsets.UTF_8);
+        snapshotRoot = temp.newFolder("snapshots");
+    }
+
+    /**
+     * Test that a snapshot with an unreadable resource is removed when loading it fails and saved again afterwards
+     */
+    @Test
+    public void testCorruptSnapshotIsRebuilt() throws Exception {
+        LibrarySnapshot snapshot = new LibrarySnapshot(libraryDir, snapshotRoot);
+        snapshot.save(library());
+        assertTrue(snapshot.load(new ResourceSetImpl()));
+
+        Files.write(new File(new File(snapshotRoot, snapshot.getHash()), "0.bin").toPath(), new byte[]{1, 2, 3});
+        assertFalse(snapshot.load(new ResourceSetImpl()));
+        assertFalse("Unreadable snapshot should be removed", snapshot.exists());
+
+        snapshot.save(library());
+        ResourceSet resourceSet = new ResourceSetImpl();
+        assertTrue(snapshot.load(resourceSet));
+        assertEquals("Test", ((EPackage) resourceSet.getResources().get(0).getContents().get(0)).getName());
+    }
+
+    /**
+     * Test that saving a snapshot deletes old snapshots and orphaned staging directories, but nothing else
+     */
+    @Test
+    public void testStaleDeletionKeepsOtherDirectories() throws Exception {
+        long old = System.currentTimeMillis() - 2L * 24 * 60 * 60 * 1000;
+        File oldSnapshot = new File(snapshotRoot, "0".repeat(64));
+        File orphan = new File(snapshotRoot, "0".repeat(64) + ".123e4567-e89b-12d3-a456-426614174000.tmp");
+        File unrelated = new File(snapshotRoot, "unrelated");
+        for (File dir : new File[]{oldSnapshot, orphan, unrelated}) {
+            assertTrue(dir.mkdir());
+            assertTrue(dir.setLastModified(old));
+        }
+
+        new LibrarySnapshot(libraryDir, snapshotRoot).save(library());
+        assertFalse(oldSnapshot.exists());
+        assertFalse(orphan.exists());
+        assertTrue(unrelated.exists());
+    }
+
+    private static ResourceSet library() {
+        ResourceSet resourceSet = new ResourceSetImpl();
+        Resource resource = new BinaryResourceImpl(URI.createURI("test:/Test.sysml"));
+        EPackage root = EcoreFactory.eINSTANCE.createEPackage();
+        root.setName("Test");
+        resource.getContents().add(root);
+        resourceSet.getResources().add(resource);
+        return resourceSet;
+    }
+}
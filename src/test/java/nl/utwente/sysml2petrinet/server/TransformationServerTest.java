@@ -0,0 +1,221 @@
+package nl.utwente.sysml2petrinet.server;
+
+import nl.utwente.sysml2petrinet.OutputTarget;
+import nl.utwente.sysml2petrinet.SysML2PetriNet;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for the transformation daemon
+ */
+@RunWith(JUnit4.class)
+public class TransformationServerTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private static final String MODEL_DIR = "src/main/resources/model";
+    private static SysML2PetriNet sysML2PetriNet;
+    private static TransformationServer server;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        sysML2PetriNet = new SysML2PetriNet();
+        server = new TransformationServer(sysML2PetriNet, 0, 2, 4);
+        server.start();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        server.close();
+    }
+
+    private HttpResponse<byte[]> post(String query, String body) throws Exception {
+        return post(server, query, body);
+    }
+
+    private HttpResponse<byte[]> post(TransformationServer target, String query, String body) throws Exception {
+        URI uri = URI.create("http://localhost:" + target.getAddress().getPort() + "/transform" + query);
+        HttpRequest request = HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofString(body)).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    /**
+     * Test that a posted model is returned as the same PNML as the in-memory API produces, and counted
+     */
+    @Test
+    public void testTransformRequest() throws Exception {
+        String model = Files.readString(Path.of(MODEL_DIR, "shop.sysml"));
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        sysML2PetriNet.transformText(model, expected, true);
+        long before = server.getMetrics().snapshot().getSucceeded();
+
+        HttpResponse<byte[]> response = post("", model);
+
+        assertEquals(200, response.statusCode());
+        assertArrayEquals(expected.toByteArray(), response.body());
+        assertEquals(before + 1, server.getMetrics().snapshot().getSucceeded());
+        assertEquals(0, server.getMetrics().getInFlight());
+    }
+
+    /**
+     * Test that invalid models and unknown targets are rejected with 400
+     */
+    @Test
+    public void testBadRequests() throws Exception {
+        assertEquals(400, post("", Files.readString(Path.of(MODEL_DIR, "errorWithoutStart.sysml"))).statusCode());
+        assertEquals(400, post("?target=svg", Files.readString(Path.of(MODEL_DIR, "shop.sysml"))).statusCode());
+    }
+
+    /**
+     * Test that a request is rejected with 503 when the queue is full
+     */
+    @Test
+    public void testQueueFull() throws Exception {
+        // Without queue capacity no request may wait for a worker
+        try (TransformationServer full = new TransformationServer(sysML2PetriNet, 0, 1, 0)) {
+            full.start();
+            assertEquals(503, post(full, "", Files.readString(Path.of(MODEL_DIR, "shop.sysml"))).statusCode());
+        }
+    }
+
+    /**
+     * Test that a transformation exceeding its timeout is answered with 504
+     */
+    @Test
+    public void testTimeout() throws Exception {
+        // A model no other request sends, so it is neither cached nor shared with a transformation in progress
+        String model = Files.readString(Path.of(MODEL_DIR, "shop.sysml")) + "\n// " + System.nanoTime() + "\n";
+
+        assertEquals(504, post("?timeout=1", model).statusCode());
+    }
+
+    /**
+     * Test that pipelined requests over the Unix domain socket are all answered with their own output
+     */
+    @Test
+    public void testSocketPipelining() throws Exception {
+        String[] models = {"shop.sysml", "example.sysml"};
+        List<byte[]> expected = new ArrayList<>();
+        for (String model : models) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            sysML2PetriNet.transformText(Files.readString(Path.of(MODEL_DIR, model)), out, true);
+            expected.add(out.toByteArray());
+        }
+        Path socketPath = temp.newFolder("sysml2petrinet").toPath().resolve("test.sock");
+
+        try (SocketServer socketServer = new SocketServer(sysML2PetriNet, socketPath, 2)) {
+            socketServer.start();
+            try (SocketClient socketClient = new SocketClient(socketPath)) {
+                // Send all requests before reading any response
+                List<CompletableFuture<byte[]>> responses = new ArrayList<>();
+                for (int i = 0; i < 10; i++) {
+                    String model = Files.readString(Path.of(MODEL_DIR, models[i % models.length]));
+                    responses.add(socketClient.transform(model, OutputTarget.ISO_PNML, Duration.ofSeconds(30)));
+                }
+                CompletableFuture<byte[]> invalid = socketClient.transform(
+                        Files.readString(Path.of(MODEL_DIR, "errorWithoutStart.sysml")), OutputTarget.ISO_PNML, null);
+
+                for (int i = 0; i < responses.size(); i++) {
+                    assertArrayEquals(expected.get(i % models.length), responses.get(i).get());
+                }
+                assertThrows(ExecutionException.class, invalid::get);
+            }
+        }
+        assertFalse(Files.exists(socketPath));
+    }
+
+    /**
+     * Test that a repeated model is answered from the result cache with the same output
+     */
+    @Test
+    public void testResultCache() throws Exception {
+        String model = Files.readString(Path.of(MODEL_DIR, "shop.sysml"));
+        server.setResultCache(new ResultCache(ResultCache.DEFAULT_MAX_BYTES, false));
+        try {
+            HttpResponse<byte[]> first = post("", model);
+            HttpResponse<byte[]> second = post("", model);
+
+            assertEquals(200, second.statusCode());
+            assertArrayEquals(first.body(), second.body());
+            assertEquals(1, server.getResultCache().stats().getMisses());
+            assertEquals(1, server.getResultCache().stats().getHits());
+        } finally {
+            server.setResultCache(null);
+        }
+    }
+
+    /**
+     * Test that the least recently used entry is evicted over the budget and found again in the soft tier
+     */
+    @Test
+    public void testResultCacheEviction() {
+        ResultCache cache = new ResultCache(100, true);
+        cache.put("a", null, new byte[60]);
+        cache.put("b", null, new byte[60]);
+
+        assertEquals(1, cache.stats().getEvictions());
+        assertEquals(60, cache.stats().getBytes());
+        assertNotNull(cache.get("a"));
+        assertEquals(1, cache.stats().getSoftHits());
+        assertEquals(2, cache.stats().getEvictions());
+    }
+
+    /**
+     * Test that concurrent callers with the same key share one computation
+     */
+    @Test
+    public void testSingleFlight() throws Exception {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            results.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return flights.run("model", () -> {
+                        calls.incrementAndGet();
+                        release.await();
+                        return "pnml";
+                    });
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }, runnable -> Thread.ofVirtual().start(runnable)));
+        }
+        // Hold the computation until every other caller has joined it
+        while (flights.getCoalesced() < 4) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+
+        for (CompletableFuture<String> result : results) {
+            assertEquals("pnml", result.get());
+        }
+        assertEquals(1, calls.get());
+        assertEquals(0, flights.getInProgress());
+    }
+}